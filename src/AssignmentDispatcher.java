@@ -0,0 +1,240 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AssignmentDispatcher automatically assigns unassigned borrow requests to
+ * available librarians. Librarians opt in with AVAILABLE|ON; each new request
+ * goes to the available librarian with the fewest outstanding (BORROWED or
+ * OVERDUE) records. Manual ASSIGN_REQUEST keeps working alongside it.
+ */
+public class AssignmentDispatcher {
+
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("library.autoAssign", "true"));
+
+	// Requests waiting for a librarian, in arrival order
+	private static LinkedBlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+
+	// Key: available librarian ID
+	private static ConcurrentHashMap<String, Availability> available = new ConcurrentHashMap<>();
+
+	// Key: librarian ID, value: outstanding records; counted once at start, then kept up to date by events
+	private static ConcurrentHashMap<String, AtomicInteger> outstandingByLibrarian = new ConcurrentHashMap<>();
+
+	private static final Object librarianSignal = new Object();
+	private static volatile boolean running;
+	private static Thread worker;
+
+	/**
+	 * A request waiting to be assigned, with the time it entered the queue
+	 */
+	private static class Pending {
+		final String recordId;
+		final long queuedAt;
+
+		Pending(String recordId) {
+			this.recordId = recordId;
+			this.queuedAt = System.nanoTime();
+		}
+	}
+
+	/**
+	 * An available librarian: how many of their sessions opted in, and their
+	 * number of outstanding records
+	 */
+	private static class Availability {
+		int sessions; // Only changed inside compute on the librarian's entry
+		final AtomicInteger outstanding;
+
+		Availability(AtomicInteger outstanding) {
+			this.outstanding = outstanding;
+		}
+	}
+
+	/**
+	 * Keeps the queue and the outstanding-work counts in step with RecordStore
+	 */
+	private static final RecordEventListener listener = event -> {
+		switch (event.getType()) {
+		case CREATED:
+			if (event.getRecordType() == LibraryRecord.RecordType.BORROW_REQUEST) {
+				pending.offer(new Pending(event.getRecordId()));
+			}
+			break;
+
+		case ASSIGNED:
+			if (isOutstanding(event.getStatus())) {
+				outstandingFor(event.getLibrarianId()).incrementAndGet();
+			}
+			break;
+
+		case STATUS_CHANGED:
+			if (event.getLibrarianId() != null) {
+				AtomicInteger outstanding = outstandingFor(event.getLibrarianId());
+				boolean was = isOutstanding(event.getPreviousStatus());
+				boolean is = isOutstanding(event.getStatus());
+				if (was && !is) {
+					outstanding.decrementAndGet();
+				} else if (!was && is) {
+					outstanding.incrementAndGet();
+				}
+			}
+			break;
+
+		default:
+			break;
+		}
+	};
+
+	/**
+	 * Start the dispatcher, queueing any requests that are already unassigned
+	 */
+	public static synchronized void start() {
+		if (!ENABLED || running) {
+			return;
+		}
+
+		for (LibraryRecord record : RecordStore.getUnassignedRequests()) {
+			if (record.getStatus() == LibraryRecord.Status.REQUESTED) {
+				pending.offer(new Pending(record.getRecordId()));
+			}
+		}
+		for (LibraryRecord record : RecordStore.scanRecords(record -> record.isAssigned() && isOutstanding(record.getStatus()))) {
+			outstandingFor(record.getAssignedLibrarianId()).incrementAndGet();
+		}
+
+		RecordEventBus.addListener(listener);
+		running = true;
+		worker = new Thread(AssignmentDispatcher::dispatchLoop, "assignment-dispatcher");
+		worker.setDaemon(true);
+		worker.start();
+		System.out.println("Assignment dispatcher started with " + pending.size() + " pending requests.");
+	}
+
+	/**
+	 * Stop the dispatcher. Requests still queued stay unassigned and are
+	 * queued again by the next start; librarians must mark themselves
+	 * available again.
+	 */
+	public static synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		RecordEventBus.removeListener(listener);
+		worker.interrupt();
+		try {
+			// A request it already took must not be assigned in a store loaded after this
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		worker = null;
+		clear();
+	}
+
+	/**
+	 * Forget every queued request and available librarian, so a server started
+	 * later in this JVM begins with an empty queue
+	 */
+	public static void clear() {
+		pending.clear();
+		available.clear();
+		outstandingByLibrarian.clear();
+	}
+
+	/**
+	 * Mark one of a librarian's sessions as available (or not) for automatic
+	 * assignment. A librarian stays available while any session that opted in
+	 * is still open; each session must call this at most once per state change.
+	 * @param librarianId The librarian's ID
+	 * @param isAvailable true to receive requests, false to stop
+	 */
+	public static void setAvailable(String librarianId, boolean isAvailable) {
+		if (!isAvailable) {
+			available.computeIfPresent(librarianId, (id, librarian) -> --librarian.sessions > 0 ? librarian : null);
+			return;
+		}
+
+		available.compute(librarianId, (id, librarian) -> {
+			if (librarian == null) {
+				librarian = new Availability(outstandingFor(id));
+			}
+			librarian.sessions++;
+			return librarian;
+		});
+
+		synchronized (librarianSignal) {
+			librarianSignal.notifyAll();
+		}
+	}
+
+	public static boolean isAvailable(String librarianId) {
+		return available.containsKey(librarianId);
+	}
+
+	public static int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Worker loop - takes the oldest request and hands it to the least loaded librarian
+	 */
+	private static void dispatchLoop() {
+		try {
+			while (running) {
+				Pending next = pending.take();
+
+				String librarianId = pickLibrarian();
+				while (librarianId == null) {
+					synchronized (librarianSignal) {
+						librarianSignal.wait(TimeUnit.SECONDS.toMillis(1));
+					}
+					librarianId = pickLibrarian();
+				}
+
+				if (RecordStore.assignLibrarian(next.recordId, librarianId)) {
+					ServerMetrics.increment("dispatcher.assigned");
+					ServerMetrics.recordLatency("dispatcher.assignmentLatency", System.nanoTime() - next.queuedAt);
+				} else {
+					// Assigned manually in the meantime
+					ServerMetrics.increment("dispatcher.skipped");
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	private static AtomicInteger outstandingFor(String librarianId) {
+		return outstandingByLibrarian.computeIfAbsent(librarianId, id -> new AtomicInteger());
+	}
+
+	/**
+	 * Loans still out (borrowed or overdue) count as a librarian's outstanding work
+	 */
+	private static boolean isOutstanding(LibraryRecord.Status status) {
+		return status == LibraryRecord.Status.BORROWED || status == LibraryRecord.Status.OVERDUE;
+	}
+
+	/**
+	 * Find the available librarian with the least outstanding work
+	 * @return Librarian ID or null if nobody is available
+	 */
+	private static String pickLibrarian() {
+		String best = null;
+		int bestLoad = Integer.MAX_VALUE;
+
+		for (Map.Entry<String, Availability> entry : available.entrySet()) {
+			int load = entry.getValue().outstanding.get();
+			if (load < bestLoad) {
+				best = entry.getKey();
+				bestLoad = load;
+			}
+		}
+
+		return best;
+	}
+}
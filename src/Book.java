@@ -0,0 +1,44 @@
+import java.io.Serializable;
+
+/**
+ * Book is a catalog title, keyed by ISBN. Books are replaced rather than
+ * modified once they are in the catalog.
+ */
+public class Book implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String isbn; // Normalized: digits (and a trailing X) only
+	private final String title;
+	private final String author;
+	private final int totalCopies;
+
+	public Book(String isbn, String title, String author, int totalCopies) {
+		this.isbn = isbn;
+		this.title = title;
+		this.author = author;
+		this.totalCopies = totalCopies;
+	}
+
+	public String getIsbn() {
+		return isbn;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getAuthor() {
+		return author;
+	}
+
+	public int getTotalCopies() {
+		return totalCopies;
+	}
+
+	@Override
+	public String toString() {
+		return "Book{" + "isbn='" + isbn + '\'' + ", title='" + title + '\'' + ", author='" + author + '\''
+				+ ", totalCopies=" + totalCopies + '}';
+	}
+}
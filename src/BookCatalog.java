@@ -0,0 +1,211 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BookCatalog holds the library's titles, keyed by ISBN, and how many copies
+ * of each are free. Each title has its own counter: a borrow request takes a
+ * copy with a compare-and-set that never lets the count go below zero, and a
+ * return gives it back. Requests for different titles never touch the same
+ * counter, and no request takes a lock.
+ *
+ * Only the titles are saved. Free copies are recounted from the records
+ * (total copies minus requests still holding one) when the catalog loads.
+ */
+public class BookCatalog {
+
+	private static final String FILE_NAME = "catalog.dat";
+
+	// Borrow requests in these states hold a copy
+	private static final EnumSet<LibraryRecord.Status> HOLDING = EnumSet.of(LibraryRecord.Status.REQUESTED,
+			LibraryRecord.Status.BORROWED, LibraryRecord.Status.OVERDUE);
+
+	/**
+	 * A title and its free-copy counter
+	 */
+	private static class Entry {
+		volatile Book book;
+		final AtomicInteger available = new AtomicInteger();
+
+		Entry(Book book) {
+			this.book = book;
+		}
+	}
+
+	// Key: normalized ISBN
+	private static ConcurrentHashMap<String, Entry> catalog = new ConcurrentHashMap<>();
+
+	private static Snapshotter snapshotter = new Snapshotter("catalog", FILE_NAME, () -> {
+		ConcurrentHashMap<String, Book> books = new ConcurrentHashMap<>();
+		catalog.forEach((isbn, entry) -> books.put(isbn, entry.book));
+		return books;
+	});
+
+	/**
+	 * Load titles from file and count free copies. Call after records are loaded.
+	 */
+	public static void loadCatalog() {
+		if (DataDirectory.isPersistent()) {
+			File file = DataDirectory.resolve(FILE_NAME).toFile();
+			if (file.exists()) {
+				try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+					Object obj = ois.readObject();
+					if (obj instanceof ConcurrentHashMap) {
+						for (Object value : ((ConcurrentHashMap<?, ?>) obj).values()) {
+							if (value instanceof Book) {
+								Book book = (Book) value;
+								catalog.put(book.getIsbn(), new Entry(book));
+							}
+						}
+					}
+				} catch (IOException | ClassNotFoundException e) {
+					System.err.println("Error loading catalog: " + e.getMessage());
+					e.printStackTrace();
+				}
+			}
+		}
+
+		Map<String, Integer> held = new HashMap<>();
+		for (LibraryRecord record : RecordStore.scanRecords(BookCatalog::holdsCopy)) {
+			held.merge(record.getIsbn(), 1, Integer::sum);
+		}
+		for (Entry entry : catalog.values()) {
+			int holds = held.getOrDefault(entry.book.getIsbn(), 0);
+			entry.available.set(Math.max(0, entry.book.getTotalCopies() - holds));
+		}
+		System.out.println("Loaded " + catalog.size() + " catalog titles.");
+	}
+
+	public static void startSnapshotter() {
+		snapshotter.start();
+	}
+
+	public static void stopSnapshotter() {
+		snapshotter.stop();
+	}
+
+	/**
+	 * Drop every title from memory; nothing is written
+	 */
+	public static void clear() {
+		catalog.clear();
+	}
+
+	/**
+	 * Strip hyphens and spaces from an ISBN
+	 * @return The normalized ISBN-10 or ISBN-13, or null if it isn't one
+	 */
+	public static String normalizeIsbn(String isbn) {
+		if (isbn == null) {
+			return null;
+		}
+		StringBuilder digits = new StringBuilder(13);
+		for (int i = 0; i < isbn.length(); i++) {
+			char c = Character.toUpperCase(isbn.charAt(i));
+			if (c >= '0' && c <= '9' || c == 'X' && i == isbn.length() - 1) {
+				digits.append(c);
+			} else if (c != '-' && c != ' ') {
+				return null;
+			}
+		}
+		boolean valid = digits.length() == 10 || digits.length() == 13 && digits.indexOf("X") < 0;
+		return valid ? digits.toString() : null;
+	}
+
+	/**
+	 * Add a title, or more copies of one already in the catalog
+	 * @param isbn Normalized ISBN
+	 * @param copies Copies to add (at least 1)
+	 * @return The catalog entry after the change
+	 */
+	public static Book addCopies(String isbn, String title, String author, int copies) {
+		Entry entry = catalog.compute(isbn, (key, existing) -> {
+			if (existing == null) {
+				existing = new Entry(new Book(isbn, title, author, copies));
+			} else {
+				Book book = existing.book;
+				existing.book = new Book(isbn, book.getTitle(), book.getAuthor(), book.getTotalCopies() + copies);
+			}
+			existing.available.addAndGet(copies);
+			return existing;
+		});
+		snapshotter.markDirty();
+		return entry.book;
+	}
+
+	/**
+	 * @return The title with this ISBN, or null
+	 */
+	public static Book getBook(String isbn) {
+		Entry entry = catalog.get(isbn);
+		return entry != null ? entry.book : null;
+	}
+
+	/**
+	 * @return Free copies of a title, or -1 if it isn't in the catalog
+	 */
+	public static int getAvailableCopies(String isbn) {
+		Entry entry = catalog.get(isbn);
+		return entry != null ? entry.available.get() : -1;
+	}
+
+	/**
+	 * Take a free copy of a title
+	 * @return false if the title is unknown or no copy is free
+	 */
+	public static boolean tryReserve(String isbn) {
+		Entry entry = catalog.get(isbn);
+		if (entry == null) {
+			return false;
+		}
+		while (true) {
+			int free = entry.available.get();
+			if (free <= 0) {
+				ServerMetrics.increment("catalog.unavailable");
+				return false;
+			}
+			if (entry.available.compareAndSet(free, free - 1)) {
+				ServerMetrics.increment("catalog.reserved");
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Give back a copy taken with tryReserve
+	 */
+	public static void release(String isbn) {
+		Entry entry = catalog.get(isbn);
+		if (entry == null) {
+			return;
+		}
+		while (true) {
+			int free = entry.available.get();
+			if (free >= entry.book.getTotalCopies()) {
+				System.err.println("Copy of " + isbn + " released but none were out");
+				return;
+			}
+			if (entry.available.compareAndSet(free, free + 1)) {
+				ServerMetrics.increment("catalog.released");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the record is a borrow request currently holding a copy of a catalog title
+	 */
+	public static boolean holdsCopy(LibraryRecord record) {
+		return record.getIsbn() != null && record.isBorrowRequest() && HOLDING.contains(record.getStatus());
+	}
+
+	public static int getTitleCount() {
+		return catalog.size();
+	}
+}
@@ -0,0 +1,39 @@
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * BufferPool recycles the fixed-size I/O buffers used by connection streams,
+ * so opening and closing sessions doesn't keep allocating new ones. The pool
+ * holds at most MAX_POOLED idle buffers; extras are left to the GC.
+ */
+public class BufferPool {
+
+	public static final int BUFFER_SIZE = Integer.getInteger("library.ioBufferSize", 8192);
+	private static final int MAX_POOLED = Integer.getInteger("library.ioBufferPoolSize", 512);
+
+	private static ArrayBlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(MAX_POOLED);
+
+	/**
+	 * Take a buffer from the pool, or allocate one if it's empty
+	 */
+	public static byte[] acquire() {
+		byte[] buffer = pool.poll();
+		if (buffer == null) {
+			ServerMetrics.increment("bufferpool.allocated");
+			return new byte[BUFFER_SIZE];
+		}
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer to the pool
+	 */
+	public static void release(byte[] buffer) {
+		if (buffer != null && buffer.length == BUFFER_SIZE) {
+			pool.offer(buffer);
+		}
+	}
+
+	public static int getPooledCount() {
+		return pool.size();
+	}
+}
@@ -0,0 +1,402 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * BulkLoader streams users and records in and out of the stores as CSV.
+ * Input is read in batches; each batch is parsed and validated in parallel,
+ * inserted in one call, and the store is saved once at the end. Can be run
+ * online (IMPORT_USERS, EXPORT_RECORDS, ... admin commands) or offline
+ * against the data files while the server is stopped:
+ * java BulkLoader import-users|import-records|export-users|export-records file.csv
+ *
+ * User CSV: name,id,email,password,department,role
+ * Record CSV: recordId,recordType,studentId,status,librarianId,date,dueDate,version,isbn
+ * (recordId may be empty on import to allocate a new ID; librarianId,
+ * dueDate and isbn may be empty; status, date and version default as for a
+ * newly created record, and trailing columns may be left out)
+ * Fields containing commas, quotes or line breaks are quoted as in RFC 4180.
+ */
+public class BulkLoader {
+
+	private static final int BATCH_SIZE = Integer.getInteger("library.bulkBatchSize", 10_000);
+	private static final String USER_HEADER = "name,id,email,password,department,role";
+	private static final String RECORD_HEADER = "recordId,recordType,studentId,status,librarianId,date,dueDate,version,isbn";
+
+	/**
+	 * Outcome of an import
+	 */
+	public static class Result {
+		private int read;
+		private int added;
+		private int invalid;
+		private long millis;
+
+		public int getAdded() {
+			return added;
+		}
+
+		@Override
+		public String toString() {
+			return "read " + read + ", added " + added + ", invalid " + invalid + ", skipped "
+					+ (read - added - invalid) + " in " + millis + "ms";
+		}
+	}
+
+	/**
+	 * Import users from a CSV file
+	 */
+	public static Result importUsers(Path file) throws IOException {
+		Result result = importFile(file, USER_HEADER, BulkLoader::parseUser, batch -> UserStore.addUsers(batch));
+		UserStore.saveUsers();
+		return result;
+	}
+
+	/**
+	 * Import records from a CSV file
+	 */
+	public static Result importRecords(Path file) throws IOException {
+		Result result = importFile(file, RECORD_HEADER, BulkLoader::parseRecord, RecordStore::addRecords);
+		RecordStore.saveRecords();
+		return result;
+	}
+
+	/**
+	 * Export every user as CSV
+	 * @return Number of users written
+	 */
+	public static int exportUsers(Writer writer) throws IOException {
+		int count = 0;
+		writer.write(USER_HEADER);
+		writer.write('\n');
+		try (VersionedMap<String, User>.Snapshot snapshot = UserStore.snapshotUsers()) {
+			for (User user : snapshot.values()) {
+				writer.write(csvLine(user.getName(), user.getId(), user.getEmail(), user.getPassword(),
+						user.getDepartmentName(), user.getRole().name()));
+				writer.write('\n');
+				count++;
+			}
+		}
+		writer.flush();
+		return count;
+	}
+
+	/**
+	 * Export every record as CSV
+	 * @return Number of records written
+	 */
+	public static int exportRecords(Writer writer) throws IOException {
+		int count = 0;
+		writer.write(RECORD_HEADER);
+		writer.write('\n');
+		try (VersionedMap<String, LibraryRecord>.Snapshot snapshot = RecordStore.snapshotRecords()) {
+			for (LibraryRecord record : snapshot.values()) {
+				writer.write(csvLine(record.getRecordId(), record.getRecordType().name(), record.getStudentId(),
+						record.getStatus().name(), Objects.toString(record.getAssignedLibrarianId(), ""),
+						record.getDate().toString(), Objects.toString(record.getDueDate(), ""),
+						Long.toString(record.getVersion()), Objects.toString(record.getIsbn(), "")));
+				writer.write('\n');
+				count++;
+			}
+		}
+		writer.flush();
+		return count;
+	}
+
+	public static int exportUsers(Path file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			return exportUsers(writer);
+		}
+	}
+
+	public static int exportRecords(Path file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			return exportRecords(writer);
+		}
+	}
+
+	/**
+	 * Parses one CSV line, returning null if the line is invalid
+	 */
+	private interface LineParser<T> {
+		T parse(String line);
+	}
+
+	/**
+	 * Inserts one parsed batch, returning how many were added
+	 */
+	private interface BatchInserter<T> {
+		int insert(List<T> batch);
+	}
+
+	/**
+	 * Stream a CSV file through parse and insert in batches
+	 */
+	private static <T> Result importFile(Path file, String header, LineParser<T> parser, BatchInserter<T> inserter)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		Result result = new Result();
+		List<String> lines = new ArrayList<>(BATCH_SIZE);
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			StringBuilder quoted = null; // A row whose quoted field runs onto the next line
+			while ((line = reader.readLine()) != null) {
+				if (quoted != null) {
+					line = quoted.append('\n').append(line).toString();
+					quoted = null;
+				}
+				if (inQuotes(line)) {
+					quoted = new StringBuilder(line);
+					continue;
+				}
+				if (line.isBlank() || line.equals(header)) {
+					continue;
+				}
+				lines.add(line);
+				if (lines.size() == BATCH_SIZE) {
+					insertBatch(lines, parser, inserter, result);
+					lines.clear();
+				}
+			}
+			if (quoted != null) {
+				lines.add(quoted.toString()); // Unterminated quote - counted as invalid
+			}
+		}
+		insertBatch(lines, parser, inserter, result);
+
+		result.millis = System.currentTimeMillis() - start;
+		System.out.println("Imported " + file.getFileName() + ": " + result);
+		return result;
+	}
+
+	private static <T> void insertBatch(List<String> lines, LineParser<T> parser, BatchInserter<T> inserter,
+			Result result) {
+		if (lines.isEmpty()) {
+			return;
+		}
+
+		// Parsing and validation are independent per line, so do them in parallel
+		List<T> parsed = lines.parallelStream().map(parser::parse).filter(Objects::nonNull)
+				.collect(Collectors.toList());
+
+		result.read += lines.size();
+		result.invalid += lines.size() - parsed.size();
+		result.added += inserter.insert(parsed);
+	}
+
+	/**
+	 * Parse name,id,email,password,department,role
+	 */
+	private static User parseUser(String line) {
+		String[] fields = parseCsv(line);
+		if (fields == null || fields.length != 6 || line.indexOf('|') >= 0) {
+			return null;
+		}
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i].isEmpty()) {
+				return null;
+			}
+		}
+		if (fields[2].indexOf('@') <= 0) {
+			return null;
+		}
+
+		try {
+			User.Role role = User.Role.valueOf(fields[5].toUpperCase());
+			return new User(fields[0], fields[1], fields[2], fields[3], fields[4], role);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse recordId,recordType,studentId[,status[,librarianId[,date[,dueDate[,version[,isbn]]]]]]
+	 */
+	private static LibraryRecord parseRecord(String line) {
+		String[] fields = parseCsv(line);
+		if (fields == null || fields.length < 3 || fields.length > 9 || line.indexOf('|') >= 0) {
+			return null;
+		}
+
+		try {
+			LibraryRecord.RecordType type = LibraryRecord.RecordType.valueOf(fields[1].trim().toUpperCase());
+			String studentId = fields[2].trim();
+			if (studentId.isEmpty()) {
+				return null;
+			}
+
+			LibraryRecord record = new LibraryRecord(null, type, studentId);
+			String recordId = fields[0].trim();
+			record.setRecordId(recordId.isEmpty() ? null : recordId);
+			if (fields.length > 3 && !fields[3].isBlank()) {
+				record.setStatus(LibraryRecord.Status.valueOf(fields[3].trim().toUpperCase()));
+			}
+			if (fields.length > 4 && !fields[4].isBlank()) {
+				record.setAssignedLibrarianId(fields[4].trim());
+			}
+			if (fields.length > 5 && !fields[5].isBlank()) {
+				record.setDate(LocalDate.parse(fields[5].trim()));
+			}
+			if (fields.length > 6 && !fields[6].isBlank()) {
+				record.setDueDate(LocalDate.parse(fields[6].trim()));
+			}
+			if (fields.length > 7 && !fields[7].isBlank()) {
+				record.setVersion(Long.parseLong(fields[7].trim()));
+			}
+			if (fields.length > 8 && !fields[8].isBlank()) {
+				String isbn = BookCatalog.normalizeIsbn(fields[8]);
+				if (isbn == null) {
+					return null;
+				}
+				record.setIsbn(isbn);
+			}
+			return record;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Join fields into one CSV row, quoting any field that contains a comma,
+	 * quote, line break or leading/trailing space (quotes are doubled)
+	 */
+	static String csvLine(String... fields) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			String field = fields[i];
+			boolean quote = !field.equals(field.trim());
+			for (int j = 0; j < field.length() && !quote; j++) {
+				char c = field.charAt(j);
+				quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+			}
+			if (quote) {
+				line.append('"').append(field.replace("\"", "\"\"")).append('"');
+			} else {
+				line.append(field);
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Split one CSV row into fields. Quoted fields are taken as-is (with
+	 * doubled quotes undone); unquoted fields are trimmed.
+	 * @return The fields, or null if a quote is not closed properly
+	 */
+	static String[] parseCsv(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		int i = 0;
+		while (true) {
+			field.setLength(0);
+			int start = i;
+			while (i < line.length() && line.charAt(i) == ' ') {
+				i++;
+			}
+			if (i < line.length() && line.charAt(i) == '"') {
+				// Quoted: runs to the next quote that isn't doubled
+				i++;
+				while (true) {
+					if (i >= line.length()) {
+						return null;
+					}
+					char c = line.charAt(i++);
+					if (c != '"') {
+						field.append(c);
+					} else if (i < line.length() && line.charAt(i) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						break;
+					}
+				}
+				while (i < line.length() && line.charAt(i) == ' ') {
+					i++;
+				}
+				if (i < line.length() && line.charAt(i) != ',') {
+					return null; // Text after the closing quote
+				}
+				fields.add(field.toString());
+			} else {
+				int comma = line.indexOf(',', start);
+				int end = comma >= 0 ? comma : line.length();
+				if (line.substring(start, end).indexOf('"') >= 0) {
+					return null; // Quote inside an unquoted field
+				}
+				fields.add(line.substring(start, end).trim());
+				i = end;
+			}
+			if (i >= line.length()) {
+				return fields.toArray(new String[0]);
+			}
+			i++; // Skip the comma
+		}
+	}
+
+	/**
+	 * @return true if a row ends inside a quoted field (an odd number of quotes)
+	 */
+	private static boolean inQuotes(String line) {
+		int quotes = 0;
+		for (int i = 0; i < line.length(); i++) {
+			if (line.charAt(i) == '"') {
+				quotes++;
+			}
+		}
+		return quotes % 2 == 1;
+	}
+
+	/**
+	 * Offline entry point - run from the server's data directory while the
+	 * server is stopped
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out.println("Usage: java BulkLoader import-users|import-records|export-users|export-records file.csv");
+			return;
+		}
+
+		UserStore.loadUsers();
+		RecordStore.loadRecords();
+		Path file = Paths.get(args[1]);
+
+		try {
+			switch (args[0]) {
+			case "import-users":
+				importUsers(file);
+				break;
+			case "import-records":
+				importRecords(file);
+				break;
+			case "export-users":
+				System.out.println("Exported " + exportUsers(file) + " users to " + file);
+				break;
+			case "export-records":
+				System.out.println("Exported " + exportRecords(file) + " records to " + file);
+				break;
+			default:
+				System.out.println("Unknown operation: " + args[0]);
+			}
+		} catch (IOException e) {
+			System.err.println("Bulk operation failed: " + e.getMessage());
+		}
+
+		// No snapshot thread offline - write the imported data before exiting
+		UserStore.flushUsers();
+		RecordStore.flushRecords();
+	}
+}
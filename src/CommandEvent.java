@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one protocol command handled by a session, from the moment it
+ * is read until its reply has been sent. Costs an allocation and a check when
+ * recording is off.
+ */
+@Name("library.Command")
+@Label("Command")
+@Category({ "Library", "Server" })
+@Description("A protocol command handled by a ServerThread")
+@StackTrace(false)
+public class CommandEvent extends jdk.jfr.Event {
+
+	@Label("Command")
+	String command;
+
+	@Label("User Role")
+	@Description("Role of the logged in user, or NONE")
+	String role;
+
+	@Label("Response Size")
+	@Description("Bytes written to the client for this command (compressed size if compressed)")
+	@DataAmount(DataAmount.BYTES)
+	long responseSize;
+}
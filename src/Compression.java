@@ -0,0 +1,100 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression helpers for large protocol messages. Once a client negotiates
+ * COMPRESS|DEFLATE, messages above the threshold are sent as a byte[] holding
+ * the DEFLATE-compressed UTF-8 text instead of a String.
+ * Each thread keeps its own Deflater, Inflater and scratch buffers. Session
+ * threads are pooled, so repeated messages on a connection reuse them instead
+ * of allocating native zlib state per message.
+ */
+public class Compression {
+
+	public static final int DEFAULT_THRESHOLD = Integer.getInteger("library.compressionThreshold", 1024);
+	private static final int LEVEL = Integer.getInteger("library.compressionLevel", Deflater.BEST_SPEED);
+
+	// Scratch output larger than this is dropped after use rather than kept per thread
+	private static final int MAX_RETAINED = 256 * 1024;
+
+	private static ThreadLocal<Codec> codecs = ThreadLocal.withInitial(Codec::new);
+
+	/**
+	 * Per-thread compression state
+	 */
+	private static class Codec {
+		final Deflater deflater = new Deflater(LEVEL);
+		final Inflater inflater = new Inflater();
+		final byte[] buffer = new byte[8192];
+		ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+
+		/**
+		 * Copy out the result and get the scratch output ready for the next call
+		 */
+		byte[] takeOutput() {
+			byte[] result = output.toByteArray();
+			if (output.size() > MAX_RETAINED) {
+				output = new ByteArrayOutputStream(8192);
+			} else {
+				output.reset();
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Compress a message
+	 * @param text Message text
+	 * @return DEFLATE-compressed UTF-8 bytes
+	 */
+	public static byte[] deflate(String text) {
+		long start = System.nanoTime();
+		byte[] input = text.getBytes(StandardCharsets.UTF_8);
+
+		Codec codec = codecs.get();
+		Deflater deflater = codec.deflater;
+		try {
+			deflater.setInput(input);
+			deflater.finish();
+			while (!deflater.finished()) {
+				int n = deflater.deflate(codec.buffer);
+				codec.output.write(codec.buffer, 0, n);
+			}
+			byte[] compressed = codec.takeOutput();
+
+			ServerMetrics.add("compression.bytesIn", input.length);
+			ServerMetrics.add("compression.bytesOut", compressed.length);
+			ServerMetrics.recordLatency("compression.deflate", System.nanoTime() - start);
+			return compressed;
+		} finally {
+			deflater.reset();
+		}
+	}
+
+	/**
+	 * Decompress a message produced by deflate
+	 * @param compressed DEFLATE-compressed UTF-8 bytes
+	 * @return Message text
+	 */
+	public static String inflate(byte[] compressed) throws DataFormatException {
+		Codec codec = codecs.get();
+		Inflater inflater = codec.inflater;
+		try {
+			inflater.setInput(compressed);
+			while (!inflater.finished()) {
+				int n = inflater.inflate(codec.buffer);
+				if (n == 0 && inflater.needsInput()) {
+					throw new DataFormatException("Truncated compressed message");
+				}
+				codec.output.write(codec.buffer, 0, n);
+			}
+			return new String(codec.takeOutput(), StandardCharsets.UTF_8);
+		} finally {
+			inflater.reset();
+			codec.output.reset(); // Discard partial output if inflating failed
+		}
+	}
+}
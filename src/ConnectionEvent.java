@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a client connection. Admitted sessions are recorded when they
+ * close, so the event's duration is the session's lifetime; rejected
+ * connections are recorded straight away.
+ */
+@Name("library.Connection")
+@Label("Connection")
+@Category({ "Library", "Server" })
+@Description("A client connection accepted by LibraryServer")
+@StackTrace(false)
+public class ConnectionEvent extends jdk.jfr.Event {
+
+	@Label("Remote Address")
+	String remoteAddress;
+
+	@Label("Outcome")
+	@Description("closed, idle, error, rejected.busy or rejected.perIp")
+	String outcome;
+
+	@Label("Commands")
+	int commands;
+}
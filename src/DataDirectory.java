@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * DataDirectory is where the stores keep their files (user.dat, records.dat,
+ * records.hwm, archive/). Paths are resolved on every use rather than when a
+ * store is initialised, so an embedded server can point the stores at its own
+ * directory before starting. With the MEMORY backend nothing is read or
+ * written at all.
+ */
+public class DataDirectory {
+
+	private static volatile Path root = Paths.get(System.getProperty("library.dataDir", "."));
+	private static volatile ServerConfig.StoreBackend backend = ServerConfig.StoreBackend
+			.valueOf(System.getProperty("library.storeBackend", "FILE").toUpperCase());
+
+	/**
+	 * Point the stores at a directory and backend. Must be called before the
+	 * stores are loaded.
+	 * @param directory Directory for data files; created if missing (FILE only)
+	 * @param storeBackend FILE to persist, MEMORY to keep everything in memory
+	 */
+	public static void configure(Path directory, ServerConfig.StoreBackend storeBackend) throws IOException {
+		if (storeBackend == ServerConfig.StoreBackend.FILE) {
+			Files.createDirectories(directory);
+		}
+		root = directory;
+		backend = storeBackend;
+	}
+
+	/**
+	 * @param fileName File or directory name relative to the data directory
+	 * @return Its path under the current data directory
+	 */
+	public static Path resolve(String fileName) {
+		return root.resolve(fileName);
+	}
+
+	/**
+	 * Resolve a file name given by a client, which must stay inside the data
+	 * directory
+	 * @param fileName File name relative to the data directory
+	 * @return Its normalized path, or null if the name is absolute or leads outside the directory
+	 * @throws java.nio.file.InvalidPathException if the name is not a valid path
+	 */
+	public static Path resolveContained(String fileName) {
+		if (Paths.get(fileName).isAbsolute()) {
+			return null;
+		}
+		Path base = root.toAbsolutePath().normalize();
+		Path path = base.resolve(fileName).normalize();
+		return path.startsWith(base) && !path.equals(base) ? path : null;
+	}
+
+	/**
+	 * @return true if the stores should load from and save to disk
+	 */
+	public static boolean isPersistent() {
+		return backend == ServerConfig.StoreBackend.FILE;
+	}
+
+	public static Path getRoot() {
+		return root;
+	}
+}
@@ -0,0 +1,96 @@
+import java.util.EnumSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventSubscription pushes record changes to one client connection.
+ * Events are buffered in a bounded queue and written by a dedicated pusher
+ * thread, so a slow client never blocks the thread that changed the record.
+ * If the buffer fills up the subscription is dropped and the client is sent
+ * EVENT|OVERFLOW so it can re-list and subscribe again.
+ */
+public class EventSubscription implements RecordEventListener {
+
+	private static final int BUFFER_SIZE = Integer.getInteger("library.subscriberBuffer", 256);
+
+	private final ServerThread connection;
+	private final User user;
+	private final EnumSet<RecordEvent.Type> types;
+	private final ArrayBlockingQueue<RecordEvent> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+	private final Thread pusher;
+	private volatile boolean active = true;
+	private volatile boolean overflowed = false;
+
+	/**
+	 * @param connection Connection to push events to
+	 * @param user Subscribing user (students only see their own records)
+	 * @param types Event types the client is interested in
+	 */
+	public EventSubscription(ServerThread connection, User user, EnumSet<RecordEvent.Type> types) {
+		this.connection = connection;
+		this.user = user;
+		this.types = types;
+		this.pusher = new Thread(this::pushEvents, "event-pusher-" + user.getId());
+		this.pusher.setDaemon(true);
+	}
+
+	/**
+	 * Register with the event bus and start pushing
+	 */
+	public void start() {
+		RecordEventBus.addListener(this);
+		pusher.start();
+	}
+
+	/**
+	 * Unregister and stop the pusher thread
+	 */
+	public void cancel() {
+		active = false;
+		RecordEventBus.removeListener(this);
+		pusher.interrupt();
+	}
+
+	@Override
+	public void onRecordEvent(RecordEvent event) {
+		if (!active || !types.contains(event.getType())) {
+			return;
+		}
+
+		// Students only hear about their own records
+		if (!user.isLibrarian() && !user.getId().equals(event.getStudentId())) {
+			return;
+		}
+
+		if (!buffer.offer(event)) {
+			// Slow consumer - drop the subscription rather than buffering without bound
+			overflowed = true;
+			active = false;
+			RecordEventBus.removeListener(this);
+			System.err.println("Subscriber " + user.getEmail() + " fell behind, dropping subscription");
+		}
+	}
+
+	/**
+	 * Pusher loop - drains the buffer onto the connection
+	 */
+	private void pushEvents() {
+		try {
+			while (active || !buffer.isEmpty()) {
+				RecordEvent event = buffer.poll(1, TimeUnit.SECONDS);
+				if (event != null) {
+					connection.sendMessage(event.toMessage());
+				}
+			}
+			if (overflowed) {
+				connection.sendMessage("EVENT|OVERFLOW|Subscription dropped - re-list records and subscribe again");
+			}
+		} catch (InterruptedException e) {
+			// Cancelled
+		}
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+}
@@ -0,0 +1,626 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+
+/**
+ * LibraryClient is an embeddable, non-blocking client for the library server.
+ * Every command returns a CompletableFuture. The client spreads commands over
+ * a small pool of connections and pipelines them, so many commands can be in
+ * flight at once.
+ *
+ * The server answers the commands on a connection one at a time and in order.
+ * Each connection therefore keeps a FIFO queue of outstanding futures, and
+ * every reply completes the oldest one; no request IDs are needed. Pushed
+ * EVENT frames are passed to the event listener instead.
+ *
+ * A dropped connection fails its outstanding futures and is reopened by the
+ * next command that uses it. Reopening replays the login and, on the primary
+ * connection, the subscription and availability settings.
+ *
+ * Replies are returned as the server sends them: "SUCCESS|..." and
+ * "ERROR|..." both complete normally. The exception is login, whose future
+ * fails if the server doesn't return a User.
+ */
+public class LibraryClient implements AutoCloseable {
+
+	private static final int DEFAULT_POOL_SIZE = Integer.getInteger("client.poolSize", 4);
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+	private final String host;
+	private final int port;
+	private final ClientConnection[] connections;
+	private final AtomicInteger nextConnection = new AtomicInteger();
+	private final ScheduledExecutorService heartbeat;
+
+	private long timeoutMillis = Long.getLong("client.timeoutMillis", 10000);
+	private boolean compress = Boolean.parseBoolean(System.getProperty("client.compress", "true"));
+	private volatile Consumer<String> eventListener = event -> {
+	};
+
+	// Session state replayed when a connection is reopened
+	private volatile String loginCommand;
+	private volatile String subscribeCommand; // Primary connection only
+	private volatile String availableCommand; // Primary connection only
+	private volatile boolean closed;
+
+	public LibraryClient(String host, int port) {
+		this(host, port, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Create a client. Connections are opened on first use (or by connect).
+	 * @param host Server host
+	 * @param port Server port
+	 * @param poolSize Number of connections to spread commands over
+	 */
+	public LibraryClient(String host, int port, int poolSize) {
+		this.host = host;
+		this.port = port;
+		this.connections = new ClientConnection[Math.max(1, poolSize)];
+		for (int i = 0; i < connections.length; i++) {
+			connections[i] = new ClientConnection(i);
+		}
+
+		// Keep idle connections from being evicted by the server
+		long heartbeatMillis = Long.getLong("client.heartbeatSeconds", 60) * 1000;
+		heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "library-client-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeat.scheduleAtFixedRate(() -> sendHeartbeats(heartbeatMillis), heartbeatMillis, heartbeatMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * How long a command may wait for its reply before its future fails with a
+	 * TimeoutException. Set before sending commands.
+	 */
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Whether connections ask the server to compress large replies. Set before
+	 * connecting.
+	 */
+	public void setCompression(boolean compress) {
+		this.compress = compress;
+	}
+
+	/**
+	 * Receive pushed EVENT frames (see subscribe). Called on a connection's
+	 * reader thread, so it should return quickly.
+	 */
+	public void setEventListener(Consumer<String> listener) {
+		this.eventListener = listener != null ? listener : event -> {
+		};
+	}
+
+	/**
+	 * Open every connection in the pool now rather than on first use
+	 */
+	public void connect() throws IOException {
+		for (ClientConnection connection : connections) {
+			connection.ensureOpen();
+		}
+	}
+
+	// ---- Commands ----
+
+	/**
+	 * Send any protocol command
+	 * @param command Command line, e.g. "PING"
+	 * @return The server's reply
+	 */
+	public CompletableFuture<String> send(String command) {
+		return pick().submit(command).thenApply(String::valueOf);
+	}
+
+	public CompletableFuture<String> register(String name, String studentId, String email, String password,
+			String department, User.Role role) {
+		return send("REGISTER|" + name + "|" + studentId + "|" + email + "|" + password + "|" + department + "|"
+				+ role);
+	}
+
+	/**
+	 * Log in on every connection in the pool. The credentials are kept so the
+	 * session can be resumed after a reconnect.
+	 * @return The logged in user; fails if the server rejects the login
+	 */
+	public CompletableFuture<User> login(String email, String password) {
+		String command = "LOGIN|" + email + "|" + password;
+		return connections[0].submit(command).thenApply(reply -> {
+			if (!(reply instanceof User)) {
+				throw new IllegalStateException("Login failed: " + reply);
+			}
+			loginCommand = command;
+			for (int i = 1; i < connections.length; i++) {
+				connections[i].submit(command);
+			}
+			return (User) reply;
+		});
+	}
+
+	/**
+	 * Log out on every open connection and forget the session
+	 */
+	public CompletableFuture<String> logout() {
+		loginCommand = null;
+		subscribeCommand = null;
+		availableCommand = null;
+		for (int i = 1; i < connections.length; i++) {
+			if (connections[i].isOpen()) {
+				connections[i].submit("LOGOUT");
+			}
+		}
+		return connections[0].submit("LOGOUT").thenApply(String::valueOf);
+	}
+
+	public CompletableFuture<String> createRecord(String recordType, String studentId) {
+		return send("CREATE_RECORD|" + recordType + "|" + studentId);
+	}
+
+	/**
+	 * Add copies of a title to the catalog (creates a NEW_BOOK_ENTRY record)
+	 */
+	public CompletableFuture<String> addBook(String studentId, String isbn, String title, String author, int copies) {
+		return send("CREATE_RECORD|NEW_BOOK_ENTRY|" + studentId + "|" + isbn + "|" + title + "|" + author + "|" + copies);
+	}
+
+	/**
+	 * Request a copy of a catalog title
+	 * @return "SUCCESS|..." or "ERROR|No copies available: ..." when every copy is out
+	 */
+	public CompletableFuture<String> requestBook(String studentId, String isbn) {
+		return send("CREATE_RECORD|BORROW_REQUEST|" + studentId + "|" + isbn);
+	}
+
+	/**
+	 * @return "BOOK|isbn|title|author|available|total" or "ERROR|..."
+	 */
+	public CompletableFuture<String> bookAvailability(String isbn) {
+		return send("BOOK_AVAILABILITY|" + isbn);
+	}
+
+	public CompletableFuture<String> viewAllRecords() {
+		return send("VIEW_ALL_RECORDS");
+	}
+
+	public CompletableFuture<String> viewMyRecords(String userId) {
+		return send("VIEW_MY_RECORDS|" + userId);
+	}
+
+	public CompletableFuture<String> assignRequest(String recordId, String librarianId) {
+		return send("ASSIGN_REQUEST|" + recordId + "|" + librarianId);
+	}
+
+	/**
+	 * Change a record's status only if it is still at the expected version
+	 * @return "SUCCESS|...", or "CONFLICT|recordId|version=n|status=s" if it changed
+	 */
+	public CompletableFuture<String> conditionalStatusUpdate(String recordId, long expectedVersion,
+			LibraryRecord.Status status) {
+		return send("CONDITIONAL_UPDATE|" + recordId + "|" + expectedVersion + "|STATUS|" + status);
+	}
+
+	/**
+	 * Assign a record only if it is still at the expected version
+	 */
+	public CompletableFuture<String> conditionalAssign(String recordId, long expectedVersion, String librarianId) {
+		return send("CONDITIONAL_UPDATE|" + recordId + "|" + expectedVersion + "|ASSIGN|" + librarianId);
+	}
+
+	/**
+	 * Look up one record
+	 * @return "RECORD|recordId|recordType|date|studentId|status|librarian|dueDate|version|isbn"
+	 *         or "ERROR|Record not found: ..."
+	 */
+	public CompletableFuture<String> getRecord(String recordId) {
+		return send("GET_RECORD|" + recordId);
+	}
+
+	/**
+	 * Every status change of one record, oldest first
+	 * @return "HISTORY|n" followed by one TRANSITION|time|from|to|librarian line per change
+	 */
+	public CompletableFuture<String> getRecordHistory(String recordId) {
+		return send("RECORD_HISTORY|" + recordId);
+	}
+
+	/**
+	 * Average loan duration per librarian (librarians only)
+	 * @param from First day (yyyy-mm-dd), or null with to for all time
+	 * @param to Last day (yyyy-mm-dd), inclusive
+	 * @return "LOAN_STATS|n" followed by one LIBRARIAN|librarianId|loans|averageHours line per librarian
+	 */
+	public CompletableFuture<String> getLoanStats(String from, String to) {
+		return send(from != null ? "LOAN_STATS|" + from + "|" + to : "LOAN_STATS");
+	}
+
+	/**
+	 * Look up several records in one round trip
+	 * @return "RECORDS|n" followed by one RECORD|... or MISSING|id line per ID
+	 */
+	public CompletableFuture<String> getRecords(String... recordIds) {
+		return send("MGET_RECORDS|" + String.join(",", recordIds));
+	}
+
+	/**
+	 * Search users by name, email or department prefix (librarians only)
+	 * @param query Whitespace-separated prefixes, e.g. "jo smi dept:comp"
+	 * @return "USERS|n" followed by one USER|id|name|email|department|role line per match
+	 */
+	public CompletableFuture<String> searchUsers(String query, int limit) {
+		return send("SEARCH_USERS|" + query + "|" + limit);
+	}
+
+	/**
+	 * Run a query
+	 * @param criteria key=value criteria, e.g. "status=BORROWED", "limit=50"
+	 */
+	public CompletableFuture<String> query(String... criteria) {
+		return send("QUERY" + (criteria.length > 0 ? "|" + String.join("|", criteria) : ""));
+	}
+
+	/**
+	 * Change the password. The new password is used when resuming the session.
+	 */
+	public CompletableFuture<String> updatePassword(String email, String oldPassword, String newPassword) {
+		return send("UPDATE_PASSWORD|" + email + "|" + oldPassword + "|" + newPassword).thenApply(reply -> {
+			if (reply.startsWith("SUCCESS") && loginCommand != null) {
+				loginCommand = "LOGIN|" + email + "|" + newPassword;
+			}
+			return reply;
+		});
+	}
+
+	/**
+	 * Subscribe to record events on the primary connection. Events go to the
+	 * event listener.
+	 * @param types Event types to receive; none means all
+	 */
+	public CompletableFuture<String> subscribe(String... types) {
+		String command = "SUBSCRIBE" + (types.length > 0 ? "|" + String.join(",", types) : "");
+		return connections[0].submit(command).thenApply(reply -> {
+			if (String.valueOf(reply).startsWith("SUCCESS")) {
+				subscribeCommand = command;
+			}
+			return String.valueOf(reply);
+		});
+	}
+
+	public CompletableFuture<String> unsubscribe() {
+		subscribeCommand = null;
+		return connections[0].submit("UNSUBSCRIBE").thenApply(String::valueOf);
+	}
+
+	/**
+	 * Opt in or out of automatic assignment (librarians only)
+	 */
+	public CompletableFuture<String> setAvailable(boolean available) {
+		String command = "AVAILABLE|" + (available ? "ON" : "OFF");
+		return connections[0].submit(command).thenApply(reply -> {
+			if (String.valueOf(reply).startsWith("SUCCESS")) {
+				availableCommand = available ? command : null;
+			}
+			return String.valueOf(reply);
+		});
+	}
+
+	public CompletableFuture<String> stats() {
+		return send("STATS");
+	}
+
+	public CompletableFuture<String> rateLimits() {
+		return send("RATE_LIMITS");
+	}
+
+	public CompletableFuture<String> setRateLimit(String scope, String key, double ratePerSecond, int burst) {
+		return send("SET_RATE_LIMIT|" + scope + "|" + key + "|" + ratePerSecond + "|" + burst);
+	}
+
+	public CompletableFuture<String> importUsers(String path) {
+		return send("IMPORT_USERS|" + path);
+	}
+
+	public CompletableFuture<String> importRecords(String path) {
+		return send("IMPORT_RECORDS|" + path);
+	}
+
+	public CompletableFuture<String> exportUsers(String path) {
+		return send("EXPORT_USERS|" + path);
+	}
+
+	public CompletableFuture<String> exportRecords(String path) {
+		return send("EXPORT_RECORDS|" + path);
+	}
+
+	public CompletableFuture<String> archiveNow(int minAgeDays) {
+		return send("ARCHIVE_NOW|" + minAgeDays);
+	}
+
+	public CompletableFuture<String> ping() {
+		return send("PING");
+	}
+
+	/**
+	 * Close every connection. Outstanding futures fail.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		heartbeat.shutdownNow();
+		for (ClientConnection connection : connections) {
+			connection.close();
+		}
+	}
+
+	// ---- Connection handling ----
+
+	/**
+	 * Pick the connection with the fewest commands in flight, starting from a
+	 * rotating offset so ties are spread evenly
+	 */
+	private ClientConnection pick() {
+		int start = Math.floorMod(nextConnection.getAndIncrement(), connections.length);
+		ClientConnection best = connections[start];
+		for (int i = 1; i < connections.length && best.inFlight.get() > 0; i++) {
+			ClientConnection candidate = connections[(start + i) % connections.length];
+			if (candidate.inFlight.get() < best.inFlight.get()) {
+				best = candidate;
+			}
+		}
+		return best;
+	}
+
+	private void sendHeartbeats(long heartbeatMillis) {
+		long idleSince = System.currentTimeMillis() - heartbeatMillis;
+		for (ClientConnection connection : connections) {
+			if (connection.isOpen() && connection.lastWrite <= idleSince) {
+				connection.sendHeartbeat();
+			}
+		}
+
+		// Reopen a dropped primary connection so pushed events resume
+		if (subscribeCommand != null && !connections[0].isOpen()) {
+			try {
+				connections[0].ensureOpen();
+			} catch (IOException e) {
+				// Server still unreachable - try again next time
+			}
+		}
+	}
+
+	/**
+	 * Turn a frame into a message, inflating compressed replies
+	 */
+	private static Object decode(Object frame) throws IOException {
+		if (frame instanceof byte[]) {
+			try {
+				return Compression.inflate((byte[]) frame);
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt compressed reply", e);
+			}
+		}
+		return frame;
+	}
+
+	private static boolean isEvent(Object message) {
+		return message instanceof String && ((String) message).startsWith("EVENT|");
+	}
+
+	/**
+	 * One pooled connection. Writes are serialized on the connection, which
+	 * keeps the order of the pending queue the same as the order on the wire.
+	 */
+	private class ClientConnection {
+		final int index;
+		final Queue<CompletableFuture<Object>> pending = new ConcurrentLinkedQueue<>();
+		final AtomicInteger inFlight = new AtomicInteger();
+
+		private volatile Socket socket;
+		private ObjectOutputStream out; // Guarded by this
+		volatile long lastWrite;
+
+		ClientConnection(int index) {
+			this.index = index;
+		}
+
+		boolean isOpen() {
+			return socket != null;
+		}
+
+		/**
+		 * Queue a command and write it. The future fails after the timeout, but
+		 * stays queued so the late reply is still matched to it and discarded.
+		 */
+		synchronized CompletableFuture<Object> submit(String command) {
+			CompletableFuture<Object> reply = new CompletableFuture<>();
+			try {
+				ensureOpen();
+				pending.add(reply);
+				inFlight.incrementAndGet();
+				write(command);
+			} catch (IOException e) {
+				// Take it back out so it can't swallow a reply meant for a later command
+				if (pending.remove(reply)) {
+					inFlight.decrementAndGet();
+				}
+				reply.completeExceptionally(e);
+				disconnect(socket, e);
+			}
+			return reply.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+
+		synchronized void sendHeartbeat() {
+			try {
+				write("HEARTBEAT");
+			} catch (IOException e) {
+				disconnect(socket, e);
+			}
+		}
+
+		/**
+		 * Open the connection if needed and resume the session on it
+		 */
+		synchronized void ensureOpen() throws IOException {
+			if (socket != null) {
+				return;
+			}
+			if (closed) {
+				throw new IOException("Client closed");
+			}
+
+			Socket s = new Socket();
+			try {
+				s.setTcpNoDelay(true);
+				s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+				out = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
+				out.flush();
+				ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(s.getInputStream()));
+
+				// Replay session state before any queued command can use the connection
+				if (compress) {
+					exchange(in, "COMPRESS|DEFLATE");
+				}
+				String login = loginCommand;
+				if (login != null) {
+					Object reply = exchange(in, login);
+					if (!(reply instanceof User)) {
+						throw new IOException("Could not resume session: " + reply);
+					}
+				}
+				if (index == 0) {
+					String subscribe = subscribeCommand;
+					if (subscribe != null) {
+						exchange(in, subscribe);
+					}
+					String available = availableCommand;
+					if (available != null) {
+						exchange(in, available);
+					}
+				}
+
+				socket = s;
+				Thread reader = new Thread(() -> readLoop(s, in), "library-client-reader-" + index);
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				s.close();
+				out = null;
+				throw e;
+			}
+		}
+
+		/**
+		 * Send a command and wait for its reply. Only used while reopening, before
+		 * the reader thread is started.
+		 */
+		private Object exchange(ObjectInputStream in, String command) throws IOException {
+			write(command);
+			try {
+				while (true) {
+					Object message = decode(in.readObject());
+					if (!isEvent(message)) {
+						return message;
+					}
+					eventListener.accept((String) message);
+				}
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unexpected reply", e);
+			}
+		}
+
+		private void write(String command) throws IOException {
+			out.writeObject(command);
+			out.reset(); // Keep the server's handle table from growing with every command
+			out.flush();
+			lastWrite = System.currentTimeMillis();
+		}
+
+		/**
+		 * Match replies to pending commands in order, and hand events to the listener
+		 */
+		private void readLoop(Socket s, ObjectInputStream in) {
+			try {
+				while (true) {
+					Object message = decode(in.readObject());
+					if (isEvent(message)) {
+						try {
+							eventListener.accept((String) message);
+						} catch (RuntimeException e) {
+							System.err.println("Event listener failed: " + e.getMessage());
+						}
+						continue;
+					}
+
+					CompletableFuture<Object> reply = pending.poll();
+					if (reply != null) {
+						inFlight.decrementAndGet();
+						reply.complete(message);
+					}
+					// Otherwise unsolicited, e.g. the idle eviction notice before a close
+				}
+			} catch (IOException | ClassNotFoundException e) {
+				disconnect(s, e);
+			}
+		}
+
+		/**
+		 * Drop the given socket if it is still the current one and fail
+		 * everything waiting on it. The next command reopens the connection.
+		 */
+		private void disconnect(Socket s, Throwable cause) {
+			if (s == null) {
+				return;
+			}
+			synchronized (pending) {
+				if (socket != s) {
+					return;
+				}
+				socket = null;
+			}
+			try {
+				s.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+
+			IOException failure = cause instanceof IOException ? (IOException) cause
+					: new IOException("Connection lost", cause);
+			CompletableFuture<Object> reply;
+			while ((reply = pending.poll()) != null) {
+				inFlight.decrementAndGet();
+				reply.completeExceptionally(failure);
+			}
+		}
+
+		void close() {
+			Socket s = socket;
+			if (s != null) {
+				synchronized (this) {
+					try {
+						write("EXIT");
+					} catch (IOException e) {
+						// Closing anyway
+					}
+				}
+				disconnect(s, new IOException("Client closed"));
+			}
+		}
+	}
+}
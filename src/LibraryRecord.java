@@ -14,7 +14,7 @@ public class LibraryRecord implements Serializable {
 	}
 
 	public enum Status {
-		AVAILABLE, REQUESTED, BORROWED, RETURNED
+		AVAILABLE, REQUESTED, BORROWED, RETURNED, OVERDUE
 	}
 
 	// Record fields
@@ -24,6 +24,9 @@ public class LibraryRecord implements Serializable {
 	private String studentId; // ID of student who created the record
 	private Status status; // Current status
 	private String assignedLibrarianId; // ID of librarian assigned (null if unassigned)
+	private LocalDate dueDate; // Date a borrowed book is due back (null until borrowed)
+	private long version; // Bumped each time RecordStore replaces the record
+	private String isbn; // Catalog book this record is for (null if none)
 
 	/**
 	 * Constructor for creating a new record
@@ -44,6 +47,22 @@ public class LibraryRecord implements Serializable {
 		this.assignedLibrarianId = null; // Initially unassigned
 	}
 
+	/**
+	 * Copy constructor. Stored records are replaced with an updated copy rather
+	 * than changed in place, so a snapshot never sees a half-applied change.
+	 */
+	public LibraryRecord(LibraryRecord other) {
+		this.recordId = other.recordId;
+		this.recordType = other.recordType;
+		this.date = other.date;
+		this.studentId = other.studentId;
+		this.status = other.status;
+		this.assignedLibrarianId = other.assignedLibrarianId;
+		this.dueDate = other.dueDate;
+		this.version = other.version;
+		this.isbn = other.isbn;
+	}
+
 	/**
 	 * Default constructor
 	 */
@@ -100,6 +119,30 @@ public class LibraryRecord implements Serializable {
 		this.assignedLibrarianId = assignedLibrarianId;
 	}
 
+	public LocalDate getDueDate() {
+		return dueDate;
+	}
+
+	public void setDueDate(LocalDate dueDate) {
+		this.dueDate = dueDate;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public String getIsbn() {
+		return isbn;
+	}
+
+	public void setIsbn(String isbn) {
+		this.isbn = isbn;
+	}
+
 	/**
 	 * Check if this record has been assigned to a librarian
 	 */
@@ -125,6 +168,7 @@ public class LibraryRecord implements Serializable {
 	public String toString() {
 		return "LibraryRecord{" + "recordId='" + recordId + '\'' + ", recordType=" + recordType + ", date=" + date
 				+ ", studentId='" + studentId + '\'' + ", status=" + status + ", assignedLibrarianId='"
-				+ (assignedLibrarianId != null ? assignedLibrarianId : "Unassigned") + '\'' + '}';
+				+ (assignedLibrarianId != null ? assignedLibrarianId : "Unassigned") + '\'' + ", dueDate=" + dueDate + ", version=" + version
+				+ ", isbn=" + isbn + '}';
 	}
 }
\ No newline at end of file
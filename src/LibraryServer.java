@@ -1,55 +1,418 @@
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main server application for Library Management System
- * Starts the server and accepts client connections
+ * Starts the server and accepts client connections.
+ *
+ * The server can also be embedded, e.g. by a performance test:
+ *   LibraryServer server = new LibraryServer(config); // port 0 = any free port
+ *   server.start();
+ *   server.awaitReady(10, TimeUnit.SECONDS);
+ *   ... connect to server.getPort() ...
+ *   server.stop();
+ * The stores are static, so only one server can run in a JVM at a time.
+ * Run separate JVMs (each with its own port and data directory) for servers
+ * in parallel.
  */
 public class LibraryServer {
     
-    private static final int PORT = 2004;
+    private static final String BUSY_MESSAGE = "ERROR|Server busy - please try again later";
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+    
+    // The server currently using the stores, if any
+    private static final AtomicReference<LibraryServer> current = new AtomicReference<>();
+    
+    private final ServerConfig config;
+    
+    // Number of sessions currently being served
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    
+    // Key: client address, Value: number of open sessions from that address
+    private final ConcurrentHashMap<InetAddress, Integer> sessionsPerIp = new ConcurrentHashMap<>();
+    
+    // Open client sockets, closed when the server stops
+    private final Set<Socket> clientSockets = ConcurrentHashMap.newKeySet();
+    
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private volatile IOException startupFailure;
+    private volatile boolean stopping;
+    
+    private Thread acceptor;
+    private ServerSocket serverSocket;
+    private ThreadPoolExecutor sessionPool;
     
     public static void main(String[] args) {
+        LibraryServer server = new LibraryServer(new ServerConfig());
         
+        // Flush whatever is unsaved on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "server-stop"));
+        
+        server.start();
+        try {
+            server.awaitReady(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public LibraryServer(ServerConfig config) {
+        this.config = config;
+    }
+    
+    /**
+     * Load the stores and start accepting connections on a background thread.
+     * Returns straight away; use awaitReady to wait until the server is listening.
+     * A server can only be started once - create a new one to start again.
+     * @throws IllegalStateException if a server is already running in this JVM
+     */
+    public synchronized void start() {
+        if (acceptor != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        if (!current.compareAndSet(null, this)) {
+            throw new IllegalStateException("Another LibraryServer is already running in this JVM");
+        }
+        acceptor = new Thread(this::run, "library-server");
+        acceptor.start();
+    }
+    
+    /**
+     * Wait until the server is accepting connections
+     * @return true if ready, false if the timeout elapsed first
+     * @throws IOException if the server failed to start (call stop to release the stores)
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        boolean done = ready.await(timeout, unit);
+        if (startupFailure != null) {
+            throw startupFailure;
+        }
+        return done;
+    }
+    
+    /**
+     * @return The port the server is listening on (the chosen port when
+     *         configured with port 0), or -1 if it is not listening yet
+     */
+    public int getPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+    
+    /**
+     * Stop accepting connections, close every session, save unsaved changes
+     * and release the stores so another server can be started in this JVM.
+     * Safe to call more than once.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (stopping || acceptor == null) {
+                return;
+            }
+            stopping = true;
+            thread = acceptor;
+        }
+        
+        closeServerSocket();
+        try {
+            // The stores are still being loaded until startup finishes or fails;
+            // clearing them before then would race the loader
+            ready.await();
+            thread.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Sessions end when their socket is closed
+        for (Socket socket : clientSockets) {
+            closeQuietly(socket);
+        }
+        if (sessionPool != null) {
+            sessionPool.shutdown();
+            try {
+                sessionPool.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        OverdueTracker.stop();
+        AssignmentDispatcher.stop();
+        RecordArchive.stopScheduler();
+        StatusHistory.stop();
+        UserStore.stopSnapshotter();
+        RecordStore.stopSnapshotter();
+        BookCatalog.stopSnapshotter();
+        UserStore.clear();
+        RecordStore.clear();
+        BookCatalog.clear();
+        StatusHistory.clear();
+        AssignmentDispatcher.clear();
+        
+        current.compareAndSet(this, null);
+        System.out.println("Server stopped.");
+    }
+    
+    /**
+     * Load data, listen and accept until stopped. Runs on the acceptor thread.
+     */
+    private void run() {
+        try {
+            serve();
+        } finally {
+            // Startup threw before it could report; don't leave stop() waiting
+            ready.countDown();
+        }
+    }
+    
+    private void serve() {
         System.out.println("===========================================");
         System.out.println("   Library Management Server Starting     ");
         System.out.println("===========================================");
         
+        try {
+            DataDirectory.configure(config.getDataDir(), config.getStoreBackend());
+        } catch (IOException e) {
+            failStartup(e);
+            return;
+        }
+        
         // Load existing data from files
         System.out.println("\nLoading data from files...");
         UserStore.loadUsers();
         RecordStore.loadRecords();
+        RecordArchive.load();
+        RecordStore.dropArchivedCopies();
+        BookCatalog.loadCatalog();
+        StatusHistory.load();
         
         System.out.println("- Users loaded: " + UserStore.getUserCount());
         System.out.println("- Records loaded: " + RecordStore.getRecordCount());
+        System.out.println("- Archived records: " + RecordArchive.getRecordCount());
+        System.out.println("- Catalog titles: " + BookCatalog.getTitleCount());
+        
+        if (stopping) {
+            failStartup(new IOException("Server stopped while starting"));
+            return;
+        }
+        
+        // Save changes in the background; stop() flushes whatever is unsaved
+        UserStore.startSnapshotter();
+        RecordStore.startSnapshotter();
+        BookCatalog.startSnapshotter();
+        
+        // Move old completed records to cold storage in the background
+        RecordArchive.startScheduler();
+        
+        // Record every status transition for RECORD_HISTORY and LOAN_STATS
+        StatusHistory.start();
+        
+        // Start assigning borrow requests to available librarians
+        AssignmentDispatcher.start();
+        
+        // Start watching active loans for due dates
+        OverdueTracker.start();
+        
+        ServerMetrics.registerGauge("sessions.active", activeSessions::get);
+        ServerMetrics.registerGauge("bufferpool.pooled", BufferPool::getPooledCount);
+        ServerMetrics.registerGauge("records.snapshotsPinned", RecordStore::getPinnedSnapshotCount);
+        ServerMetrics.registerGauge("records.versionsRetained", RecordStore::getRetainedVersionCount);
+        ServerMetrics.registerGauge("catalog.titles", BookCatalog::getTitleCount);
+        ServerMetrics.registerGauge("history.transitions", StatusHistory::getEventCount);
+        
+        sessionPool = createSessionPool();
         
         // Start server
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
+        try (ServerSocket listener = new ServerSocket(config.getPort(), config.getAcceptBacklog())) {
+            synchronized (this) {
+                serverSocket = listener;
+                if (stopping) {
+                    failStartup(new IOException("Server stopped while starting"));
+                    return;
+                }
+            }
             
-            System.out.println("\n✓ Server started successfully on port " + PORT);
+            System.out.println("\n✓ Server started successfully on port " + listener.getLocalPort());
+            System.out.println(config);
             System.out.println("Waiting for client connections...\n");
+            ready.countDown();
             
-            // Accept client connections indefinitely
-            while (true) {
+            // Accept client connections until stopped
+            while (!stopping) {
                 try {
                     // Wait for a client to connect
-                    Socket clientSocket = serverSocket.accept();
-                    
-                    // Create a new thread to handle this client
-                    ServerThread clientThread = new ServerThread(clientSocket);
-                    clientThread.start();
-                    
-                    System.out.println("Active connections: " + Thread.activeCount());
+                    Socket clientSocket = listener.accept();
+                    admit(clientSocket);
                     
                 } catch (IOException e) {
-                    System.err.println("Error accepting client connection: " + e.getMessage());
+                    if (!stopping) {
+                        System.err.println("Error accepting client connection: " + e.getMessage());
+                    }
                 }
             }
             
         } catch (IOException e) {
-            System.err.println("Failed to start server: " + e.getMessage());
-            e.printStackTrace();
+            failStartup(e);
         }
     }
+    
+    private void failStartup(IOException e) {
+        startupFailure = e;
+        ready.countDown();
+    }
+    
+    private synchronized void closeServerSocket() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+    
+    /**
+     * Sessions are limited to maxSessions either way. SynchronousQueue means a
+     * connection is either handed to a thread straight away or rejected.
+     */
+    private ThreadPoolExecutor createSessionPool() {
+        if (config.getThreadModel() == ServerConfig.ThreadModel.THREAD_PER_SESSION) {
+            // No idle threads are kept, so each session starts a new thread
+            return new ThreadPoolExecutor(0, config.getMaxSessions(), 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(config.getMaxSessions(), config.getMaxSessions(),
+                60, TimeUnit.SECONDS, new SynchronousQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    /**
+     * Hand a new connection to the session pool, or reject it if the server or
+     * the client's address is already at its limit
+     */
+    private void admit(Socket clientSocket) {
+        InetAddress address = clientSocket.getInetAddress();
+        
+        // Committed when the session ends, so its duration is the session's lifetime
+        ConnectionEvent connection = new ConnectionEvent();
+        connection.begin();
+        
+        if (sessionsPerIp.merge(address, 1, Integer::sum) > config.getMaxSessionsPerIp()) {
+            releaseAddress(address);
+            ServerMetrics.increment("sessions.rejected.perIp");
+            commitConnectionEvent(connection, address, "rejected.perIp", 0);
+            reject(clientSocket);
+            return;
+        }
+        
+        try {
+            configureSocket(clientSocket);
+        } catch (IOException e) {
+            releaseAddress(address);
+            System.err.println("Error configuring client socket: " + e.getMessage());
+            closeQuietly(clientSocket);
+            return;
+        }
+        
+        // Create a handler for this client and run it on a pooled thread
+        ServerThread session = new ServerThread(clientSocket);
+        try {
+            sessionPool.execute(() -> {
+                activeSessions.incrementAndGet();
+                clientSockets.add(clientSocket);
+                try {
+                    session.run();
+                } finally {
+                    clientSockets.remove(clientSocket);
+                    activeSessions.decrementAndGet();
+                    releaseAddress(address);
+                    commitConnectionEvent(connection, address, session.getCloseReason(), session.getCommandCount());
+                }
+            });
+            ServerMetrics.increment("sessions.accepted");
+            System.out.println("Active connections: " + sessionPool.getActiveCount());
+            
+        } catch (RejectedExecutionException e) {
+            releaseAddress(address);
+            ServerMetrics.increment("sessions.rejected.busy");
+            commitConnectionEvent(connection, address, "rejected.busy", 0);
+            reject(clientSocket);
+        }
+    }
+    
+    private static void commitConnectionEvent(ConnectionEvent event, InetAddress address, String outcome, int commands) {
+        if (event.shouldCommit()) {
+            event.remoteAddress = address.getHostAddress();
+            event.outcome = outcome;
+            event.commands = commands;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Apply socket options to an accepted connection. The read timeout is what
+     * lets ServerThread evict idle sessions.
+     */
+    private void configureSocket(Socket socket) throws IOException {
+        socket.setTcpNoDelay(config.isTcpNoDelay());
+        socket.setKeepAlive(true);
+        socket.setSoTimeout(config.getIdleTimeoutMillis());
+        if (config.getSocketBufferSize() > 0) {
+            socket.setSendBufferSize(config.getSocketBufferSize());
+            socket.setReceiveBufferSize(config.getSocketBufferSize());
+        }
+    }
+    
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+    
+    /**
+     * Drop one session from an address's count, removing the entry when it reaches zero
+     */
+    private void releaseAddress(InetAddress address) {
+        sessionsPerIp.computeIfPresent(address, (k, count) -> count > 1 ? count - 1 : null);
+    }
+    
+    /**
+     * Send a busy frame and close the connection without starting a session
+     */
+    private static void reject(Socket clientSocket) {
+        try (Socket socket = clientSocket) {
+            socket.setSoTimeout(1000);
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.writeObject(BUSY_MESSAGE);
+            out.flush();
+        } catch (IOException e) {
+            // Client already gone - nothing to do
+        }
+        System.err.println("Rejected connection from " + clientSocket.getInetAddress().getHostAddress());
+    }
+    
+    /**
+     * @return Number of sessions currently being served
+     */
+    public int getActiveSessionCount() {
+        return activeSessions.get();
+    }
 }
@@ -0,0 +1,97 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OverdueTracker turns BORROWED loans into OVERDUE ones when their due date
+ * passes. Every active loan has one timeout on a TimerWheel, set when the
+ * loan starts and cancelled when it ends, so nothing ever scans the records.
+ * The OVERDUE transition is published like any other status change, which
+ * notifies subscribed clients.
+ */
+public class OverdueTracker {
+
+	private static final long TICK_MILLIS = Long.getLong("library.overdueTickMillis", 60_000);
+	private static final int WHEEL_SIZE = Integer.getInteger("library.overdueWheelSize", 8192);
+
+	private static TimerWheel<String> wheel = new TimerWheel<>(TICK_MILLIS, WHEEL_SIZE, OverdueTracker::onDue);
+
+	// Key: recordId, Value: pending timeout for that loan
+	private static ConcurrentHashMap<String, TimerWheel.Node<String>> timeouts = new ConcurrentHashMap<>();
+
+	/**
+	 * Schedules and cancels timeouts as loans start and end
+	 */
+	private static final RecordEventListener listener = event -> {
+		if (event.getStatus() == LibraryRecord.Status.BORROWED) {
+			LibraryRecord record = RecordStore.getRecordById(event.getRecordId());
+			if (record != null) {
+				track(record);
+			}
+		} else if (event.getStatus() != LibraryRecord.Status.OVERDUE) {
+			// Returned, archived or otherwise no longer out
+			untrack(event.getRecordId());
+		}
+	};
+
+	/**
+	 * Track every loan that is currently out and start the wheel
+	 */
+	public static void start() {
+		RecordEventBus.addListener(listener);
+		for (LibraryRecord record : RecordStore.scanRecords(r -> r.getStatus() == LibraryRecord.Status.BORROWED)) {
+			track(record);
+		}
+		wheel.start("overdue-tracker");
+		System.out.println("Overdue tracker started with " + timeouts.size() + " active loans.");
+	}
+
+	public static void stop() {
+		RecordEventBus.removeListener(listener);
+		wheel.stop();
+		for (String recordId : timeouts.keySet()) {
+			untrack(recordId);
+		}
+	}
+
+	/**
+	 * Schedule (or reschedule) the timeout for a loan. A loan is overdue once
+	 * its due date has fully passed.
+	 */
+	private static void track(LibraryRecord record) {
+		LocalDate dueDate = record.getDueDate();
+		if (dueDate == null) {
+			return;
+		}
+
+		long deadline = dueDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		TimerWheel.Node<String> previous = timeouts.put(record.getRecordId(), wheel.schedule(record.getRecordId(), deadline));
+		if (previous != null) {
+			wheel.cancel(previous);
+		}
+	}
+
+	private static void untrack(String recordId) {
+		TimerWheel.Node<String> timeout = timeouts.remove(recordId);
+		if (timeout != null) {
+			wheel.cancel(timeout);
+		}
+	}
+
+	/**
+	 * Called on the wheel's thread when a loan's due date passes
+	 */
+	private static void onDue(String recordId) {
+		timeouts.remove(recordId);
+		if (RecordStore.markOverdue(recordId)) {
+			ServerMetrics.increment("loans.overdue");
+		}
+	}
+
+	/**
+	 * @return Number of loans being tracked
+	 */
+	public static int getActiveLoanCount() {
+		return timeouts.size();
+	}
+}
@@ -0,0 +1,94 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered input stream whose buffer comes from BufferPool. Lets
+ * ObjectInputStream's many small reads be served from memory instead of
+ * separate socket reads. The buffer goes back to the pool on close.
+ */
+public class PooledBufferedInputStream extends FilterInputStream {
+
+	private byte[] buffer = BufferPool.acquire();
+	private int pos;
+	private int limit;
+
+	public PooledBufferedInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		if (pos >= limit && !fill()) {
+			return -1;
+		}
+		return buffer[pos++] & 0xff;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (pos >= limit) {
+			if (len >= buffer.length) {
+				// Large read with nothing buffered - read straight through
+				return in.read(b, off, len);
+			}
+			if (!fill()) {
+				return -1;
+			}
+		}
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(buffer, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public synchronized int available() throws IOException {
+		return (limit - pos) + in.available();
+	}
+
+	@Override
+	public synchronized long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		if (pos < limit) {
+			long skipped = Math.min(n, limit - pos);
+			pos += skipped;
+			return skipped;
+		}
+		return in.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			synchronized (this) {
+				BufferPool.release(buffer);
+				buffer = new byte[0];
+				pos = 0;
+				limit = 0;
+			}
+		}
+	}
+
+	private boolean fill() throws IOException {
+		int n = in.read(buffer, 0, buffer.length);
+		if (n <= 0) {
+			return false;
+		}
+		pos = 0;
+		limit = n;
+		return true;
+	}
+}
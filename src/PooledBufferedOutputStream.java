@@ -0,0 +1,96 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered output stream whose buffer comes from BufferPool. Small writes
+ * from ObjectOutputStream are collected and sent to the socket in one write
+ * per flush. The buffer goes back to the pool on close.
+ */
+public class PooledBufferedOutputStream extends FilterOutputStream {
+
+	private byte[] buffer = BufferPool.acquire();
+	private int count;
+	private boolean closed; // Guarded by this; the buffer is back in the pool once set
+	private volatile long bytesWritten; // Total bytes accepted, for per-command response sizes
+
+	public PooledBufferedOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		ensureOpen();
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+		bytesWritten++;
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		bytesWritten += len;
+		if (len >= buffer.length) {
+			// Larger than the buffer - write straight through
+			flushBuffer();
+			out.write(b, off, len);
+			return;
+		}
+		if (len > buffer.length - count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		ensureOpen();
+		flushBuffer();
+		out.flush();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+		}
+		try {
+			super.close();
+		} finally {
+			synchronized (this) {
+				if (!closed) {
+					closed = true;
+					BufferPool.release(buffer);
+					buffer = null;
+					count = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writers racing session teardown (e.g. the event pusher) get an
+	 * IOException like on any closed stream
+	 */
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RateLimiter enforces per-user request limits in ServerThread's dispatch.
+ * Every authenticated user has a bucket sized by their own limit or, failing
+ * that, their role's limit. Commands with their own limit (e.g.
+ * VIEW_ALL_RECORDS) get an extra bucket per user. Limits can be changed at
+ * runtime with SET_RATE_LIMIT; changing a limit resets the affected buckets.
+ */
+public class RateLimiter {
+
+	// Configured limits; the bucket in each map is a template holding rate and burst
+	private static ConcurrentHashMap<User.Role, TokenBucket> roleLimits = new ConcurrentHashMap<>();
+	private static ConcurrentHashMap<String, TokenBucket> userLimits = new ConcurrentHashMap<>();
+	private static ConcurrentHashMap<String, TokenBucket> commandLimits = new ConcurrentHashMap<>();
+
+	// Live buckets. Key: userId, and for commands userId then command name
+	private static ConcurrentHashMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+	private static ConcurrentHashMap<String, ConcurrentHashMap<String, TokenBucket>> commandBuckets = new ConcurrentHashMap<>();
+
+	static {
+		roleLimits.put(User.Role.STUDENT, new TokenBucket(20, 40));
+		roleLimits.put(User.Role.LIBRARIAN, new TokenBucket(50, 100));
+		commandLimits.put("VIEW_ALL_RECORDS", new TokenBucket(1, 5));
+	}
+
+	/**
+	 * Check whether a user may run a command now
+	 * @param user The authenticated user
+	 * @param command The command name
+	 * @return true if allowed, false if the user is over a limit
+	 */
+	public static boolean tryAcquire(User user, String command) {
+		String userId = user.getId();
+		TokenBucket userBucket = null;
+
+		TokenBucket limit = userLimits.get(userId);
+		if (limit == null) {
+			limit = roleLimits.get(user.getRole());
+		}
+		if (limit != null) {
+			TokenBucket bucket = userBuckets.get(userId);
+			if (bucket == null) {
+				bucket = userBuckets.computeIfAbsent(userId, k -> copyOf(userLimitFor(user)));
+			}
+			if (bucket != null && !bucket.tryAcquire()) {
+				ServerMetrics.increment("ratelimit.rejected.user");
+				return false;
+			}
+			userBucket = bucket;
+		}
+
+		TokenBucket commandLimit = commandLimits.get(command);
+		if (commandLimit != null) {
+			ConcurrentHashMap<String, TokenBucket> buckets = commandBuckets.get(userId);
+			if (buckets == null) {
+				buckets = commandBuckets.computeIfAbsent(userId, k -> new ConcurrentHashMap<>());
+			}
+			TokenBucket bucket = buckets.get(command);
+			if (bucket == null) {
+				bucket = buckets.computeIfAbsent(command, k -> copyOf(commandLimits.get(k)));
+			}
+			if (bucket != null && !bucket.tryAcquire()) {
+				// A throttled command must not use up the user's budget for every other command
+				if (userBucket != null) {
+					userBucket.refund();
+				}
+				ServerMetrics.increment("ratelimit.rejected.command." + command);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Set or remove the limit for a role
+	 * @param ratePerSecond Sustained rate, or 0 to remove the limit
+	 */
+	public static void setRoleLimit(User.Role role, double ratePerSecond, int burst) {
+		if (ratePerSecond > 0) {
+			roleLimits.put(role, new TokenBucket(ratePerSecond, burst));
+		} else {
+			roleLimits.remove(role);
+		}
+		userBuckets.clear();
+	}
+
+	/**
+	 * Set or remove the limit for one user, overriding their role's limit
+	 * @param ratePerSecond Sustained rate, or 0 to go back to the role limit
+	 */
+	public static void setUserLimit(String userId, double ratePerSecond, int burst) {
+		if (ratePerSecond > 0) {
+			userLimits.put(userId, new TokenBucket(ratePerSecond, burst));
+		} else {
+			userLimits.remove(userId);
+		}
+		userBuckets.remove(userId);
+	}
+
+	/**
+	 * Set or remove the per-user limit for a command
+	 * @param ratePerSecond Sustained rate, or 0 to remove the limit
+	 */
+	public static void setCommandLimit(String command, double ratePerSecond, int burst) {
+		if (ratePerSecond > 0) {
+			commandLimits.put(command, new TokenBucket(ratePerSecond, burst));
+		} else {
+			commandLimits.remove(command);
+		}
+		for (ConcurrentHashMap<String, TokenBucket> buckets : commandBuckets.values()) {
+			buckets.remove(command);
+		}
+	}
+
+	/**
+	 * Format the configured limits for display
+	 */
+	public static String describeLimits() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\n=== Rate Limits ===\n");
+		append(sb, "ROLE", new TreeMap<>(roleLimits));
+		append(sb, "USER", new TreeMap<>(userLimits));
+		append(sb, "COMMAND", new TreeMap<>(commandLimits));
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, String scope, Map<?, TokenBucket> limits) {
+		for (Map.Entry<?, TokenBucket> entry : limits.entrySet()) {
+			sb.append(scope).append(" ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+		}
+	}
+
+	private static TokenBucket userLimitFor(User user) {
+		TokenBucket limit = userLimits.get(user.getId());
+		return limit != null ? limit : roleLimits.get(user.getRole());
+	}
+
+	private static TokenBucket copyOf(TokenBucket limit) {
+		return limit != null ? new TokenBucket(limit.getRatePerSecond(), limit.getBurst()) : null;
+	}
+}
@@ -0,0 +1,394 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecordArchive is cold storage for completed records. RETURNED records never
+ * change again, so they are moved out of the hot RecordStore map into
+ * immutable segment files. Each segment holds records sorted by numeric ID,
+ * followed by a sparse index (every Nth ID and its file offset) and a footer
+ * with the segment's ID and date range. Only the sparse index and ranges are
+ * kept in memory; records are read from disk on demand.
+ *
+ * Segment layout: MAGIC, entries..., index, ranges, indexOffset (last 8 bytes)
+ * Segments written before due dates, versions and ISBNs were archived
+ * (MAGIC_V1) are still read; those fields come back empty.
+ */
+public class RecordArchive {
+    
+    // RETURNED records created at least this many days ago are archived
+    public static final int MIN_AGE_DAYS = Integer.getInteger("library.archiveMinAgeDays", 30);
+    private static final long INTERVAL_HOURS = Long.getLong("library.archiveIntervalHours", 24);
+    
+    private static final String DIRECTORY = "archive";
+    private static final int MAGIC_V1 = 0x4C534547; // "LSEG"
+    private static final int MAGIC = 0x4C534732; // "LSG2": adds dueDate, version and isbn
+    private static final long NO_DUE_DATE = Long.MIN_VALUE;
+    private static final int SPARSE_INTERVAL = 64; // Records between sparse index entries
+    
+    // Loaded segments, oldest first
+    private static CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<>();
+    
+    private static ScheduledExecutorService scheduler;
+    
+    /**
+     * In-memory summary of one segment file
+     */
+    private static class Segment {
+        File file;
+        int format; // Magic the segment was written with
+        int count;
+        long minId, maxId;
+        long minDay, maxDay;
+        long indexOffset; // Entries end here
+        long[] sparseIds;
+        long[] sparseOffsets;
+        
+        boolean overlaps(long fromDay, long toDay) {
+            return minDay <= toDay && maxDay >= fromDay;
+        }
+    }
+    
+    /**
+     * Read the index of every segment in the archive directory
+     */
+    public static void load() {
+        segments.clear();
+        if (!DataDirectory.isPersistent()) {
+            return;
+        }
+        File[] files = DataDirectory.resolve(DIRECTORY).toFile().listFiles((dir, name) -> name.endsWith(".seg"));
+        if (files == null) {
+            return;
+        }
+        
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        int records = 0;
+        for (File file : files) {
+            try {
+                Segment segment = readIndex(file);
+                segments.add(segment);
+                records += segment.count;
+            } catch (IOException e) {
+                System.err.println("Error loading archive segment " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Loaded " + segments.size() + " archive segments (" + records + " records).");
+    }
+    
+    /**
+     * Archive completed records in the background every archiveIntervalHours
+     */
+    public static synchronized void startScheduler() {
+        if (scheduler != null || !DataDirectory.isPersistent()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "record-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> RecordStore.archiveCompletedRecords(MIN_AGE_DAYS), INTERVAL_HOURS,
+                INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+    
+    /**
+     * Stop the background archiver. A run already in progress is allowed to finish.
+     */
+    public static synchronized void stopScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+    
+    /**
+     * Write records to a new immutable segment. The segment is written to a
+     * temp file and renamed, so a crash never leaves a partial segment.
+     * @param toArchive Records to archive (must have numeric IDs)
+     */
+    public static synchronized void writeSegment(List<LibraryRecord> toArchive) throws IOException {
+        if (toArchive.isEmpty()) {
+            return;
+        }
+        if (!DataDirectory.isPersistent()) {
+            throw new IOException("Archiving is disabled with the MEMORY store backend");
+        }
+        
+        List<LibraryRecord> sorted = new ArrayList<>(toArchive);
+        sorted.sort(Comparator.comparingLong(record -> numericId(record.getRecordId())));
+        
+        File directory = DataDirectory.resolve(DIRECTORY).toFile();
+        directory.mkdirs();
+        File file = new File(directory, String.format("segment-%06d.seg", nextSegmentNumber()));
+        File tmp = new File(directory, file.getName() + ".tmp");
+        
+        int sparseCount = (sorted.size() + SPARSE_INTERVAL - 1) / SPARSE_INTERVAL;
+        long[] sparseIds = new long[sparseCount];
+        long[] sparseOffsets = new long[sparseCount];
+        long minDay = Long.MAX_VALUE;
+        long maxDay = Long.MIN_VALUE;
+        long indexOffset;
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            
+            for (int i = 0; i < sorted.size(); i++) {
+                LibraryRecord record = sorted.get(i);
+                if (i % SPARSE_INTERVAL == 0) {
+                    sparseIds[i / SPARSE_INTERVAL] = numericId(record.getRecordId());
+                    sparseOffsets[i / SPARSE_INTERVAL] = out.size();
+                }
+                long day = record.getDate().toEpochDay();
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+                writeRecord(out, record);
+            }
+            
+            indexOffset = out.size();
+            out.writeInt(sorted.size());
+            out.writeInt(sparseCount);
+            for (int i = 0; i < sparseCount; i++) {
+                out.writeLong(sparseIds[i]);
+                out.writeLong(sparseOffsets[i]);
+            }
+            out.writeLong(numericId(sorted.get(0).getRecordId()));
+            out.writeLong(numericId(sorted.get(sorted.size() - 1).getRecordId()));
+            out.writeLong(minDay);
+            out.writeLong(maxDay);
+            out.writeLong(indexOffset);
+        }
+        
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        segments.add(readIndex(file));
+        System.out.println("Archived " + sorted.size() + " records to " + file.getName());
+    }
+    
+    /**
+     * Look up an archived record by ID
+     * @return The record or null if it isn't archived
+     */
+    public static LibraryRecord getRecordById(String recordId) {
+        long id = numericId(recordId);
+        if (id < 0) {
+            return null;
+        }
+        
+        for (Segment segment : segments) {
+            LibraryRecord record = find(segment, recordId, id);
+            if (record != null) {
+                return record;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Whether a live record is already archived, at its current version or a
+     * later one. Segments written before versions were archived can't tell,
+     * so their copy is taken to be current (a RETURNED record rarely changes).
+     * @return true if the live copy is redundant
+     */
+    public static boolean holdsCurrentCopy(LibraryRecord live) {
+        long id = numericId(live.getRecordId());
+        if (id < 0) {
+            return false;
+        }
+        for (Segment segment : segments) {
+            LibraryRecord archived = find(segment, live.getRecordId(), id);
+            if (archived != null && (segment.format != MAGIC || archived.getVersion() >= live.getVersion())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Find a record in one segment: locate the block that could hold the ID,
+     * then scan just that block
+     */
+    private static LibraryRecord find(Segment segment, String recordId, long id) {
+        if (id < segment.minId || id > segment.maxId) {
+            return null;
+        }
+        int block = Arrays.binarySearch(segment.sparseIds, id);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        long start = segment.sparseOffsets[block];
+        long end = block + 1 < segment.sparseOffsets.length ? segment.sparseOffsets[block + 1]
+                : segment.indexOffset;
+        
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(readRange(segment.file, start, end)))) {
+            while (in.available() > 0) {
+                LibraryRecord record = readRecord(in, segment.format);
+                if (record.getRecordId().equals(recordId)) {
+                    return record;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading archive segment " + segment.file.getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * Find archived records matching a query. Only segments whose date range
+     * overlaps the query are read.
+     */
+    public static List<LibraryRecord> query(RecordQuery query) {
+        long fromDay = query.getFrom() != null ? query.getFrom().toEpochDay() : Long.MIN_VALUE;
+        long toDay = query.getTo() != null ? query.getTo().toEpochDay() : Long.MAX_VALUE;
+        List<LibraryRecord> results = new ArrayList<>();
+        
+        for (Segment segment : segments) {
+            if (!segment.overlaps(fromDay, toDay)) {
+                continue;
+            }
+            
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)))) {
+                in.readInt(); // Magic
+                for (int i = 0; i < segment.count; i++) {
+                    LibraryRecord record = readRecord(in, segment.format);
+                    if (query.matches(record)) {
+                        results.add(record);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading archive segment " + segment.file.getName() + ": " + e.getMessage());
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * @return Total number of archived records
+     */
+    public static int getRecordCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.count;
+        }
+        return count;
+    }
+    
+    /**
+     * Parse the numeric part of a record ID (format: R1001)
+     * @return The number or -1 if the ID isn't in the standard format
+     */
+    public static long numericId(String recordId) {
+        try {
+            return Long.parseLong(recordId.substring(1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+    
+    private static void writeRecord(DataOutputStream out, LibraryRecord record) throws IOException {
+        out.writeUTF(record.getRecordId());
+        out.writeByte(record.getRecordType().ordinal());
+        out.writeLong(record.getDate().toEpochDay());
+        out.writeUTF(record.getStudentId());
+        out.writeUTF(record.getAssignedLibrarianId() != null ? record.getAssignedLibrarianId() : "");
+        out.writeByte(record.getStatus().ordinal());
+        out.writeLong(record.getDueDate() != null ? record.getDueDate().toEpochDay() : NO_DUE_DATE);
+        out.writeLong(record.getVersion());
+        out.writeUTF(record.getIsbn() != null ? record.getIsbn() : "");
+    }
+    
+    private static LibraryRecord readRecord(DataInputStream in, int format) throws IOException {
+        LibraryRecord record = new LibraryRecord();
+        record.setRecordId(in.readUTF());
+        record.setRecordType(LibraryRecord.RecordType.values()[in.readByte()]);
+        record.setDate(LocalDate.ofEpochDay(in.readLong()));
+        record.setStudentId(in.readUTF());
+        String librarianId = in.readUTF();
+        record.setAssignedLibrarianId(librarianId.isEmpty() ? null : librarianId);
+        record.setStatus(LibraryRecord.Status.values()[in.readByte()]);
+        if (format == MAGIC) {
+            long dueDay = in.readLong();
+            record.setDueDate(dueDay != NO_DUE_DATE ? LocalDate.ofEpochDay(dueDay) : null);
+            record.setVersion(in.readLong());
+            String isbn = in.readUTF();
+            record.setIsbn(isbn.isEmpty() ? null : isbn);
+        }
+        return record;
+    }
+    
+    /**
+     * Read a segment's footer and sparse index
+     */
+    private static Segment readIndex(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            int format = raf.readInt();
+            if (format != MAGIC && format != MAGIC_V1) {
+                throw new IOException("Not an archive segment");
+            }
+            
+            Segment segment = new Segment();
+            segment.file = file;
+            segment.format = format;
+            raf.seek(raf.length() - 8);
+            segment.indexOffset = raf.readLong();
+            
+            byte[] index = new byte[(int) (raf.length() - 8 - segment.indexOffset)];
+            raf.seek(segment.indexOffset);
+            raf.readFully(index);
+            
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            segment.count = in.readInt();
+            int sparseCount = in.readInt();
+            segment.sparseIds = new long[sparseCount];
+            segment.sparseOffsets = new long[sparseCount];
+            for (int i = 0; i < sparseCount; i++) {
+                segment.sparseIds[i] = in.readLong();
+                segment.sparseOffsets[i] = in.readLong();
+            }
+            segment.minId = in.readLong();
+            segment.maxId = in.readLong();
+            segment.minDay = in.readLong();
+            segment.maxDay = in.readLong();
+            return segment;
+        }
+    }
+    
+    private static byte[] readRange(File file, long start, long end) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) (end - start)];
+            raf.seek(start);
+            raf.readFully(bytes);
+            return bytes;
+        }
+    }
+    
+    private static int nextSegmentNumber() {
+        int next = 1;
+        for (Segment segment : segments) {
+            String name = segment.file.getName();
+            try {
+                next = Math.max(next, Integer.parseInt(name.substring(8, name.length() - 4)) + 1);
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                // Not one of ours
+            }
+        }
+        return next;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * RecordEvent describes a single change made to a LibraryRecord through
+ * RecordStore. Events are published on the RecordEventBus and pushed to
+ * subscribed clients as EVENT|type|recordId|recordType|studentId|status|librarian
+ */
+public class RecordEvent {
+
+	public enum Type {
+		CREATED, ASSIGNED, STATUS_CHANGED, ARCHIVED
+	}
+
+	private final Type type;
+	private final String recordId;
+	private final LibraryRecord.RecordType recordType;
+	private final String studentId;
+	private final String librarianId;
+	private final LibraryRecord.Status previousStatus; // null for CREATED
+	private final LibraryRecord.Status status;
+	private final long version;
+	private final long timestamp;
+
+	/**
+	 * Capture the state of a record at the moment it changed
+	 */
+	public RecordEvent(Type type, LibraryRecord record, LibraryRecord.Status previousStatus) {
+		this.type = type;
+		this.recordId = record.getRecordId();
+		this.recordType = record.getRecordType();
+		this.studentId = record.getStudentId();
+		this.librarianId = record.getAssignedLibrarianId();
+		this.previousStatus = previousStatus;
+		this.status = record.getStatus();
+		this.version = record.getVersion();
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	// Getters
+	public Type getType() {
+		return type;
+	}
+
+	public String getRecordId() {
+		return recordId;
+	}
+
+	public LibraryRecord.RecordType getRecordType() {
+		return recordType;
+	}
+
+	public String getStudentId() {
+		return studentId;
+	}
+
+	public String getLibrarianId() {
+		return librarianId;
+	}
+
+	public LibraryRecord.Status getPreviousStatus() {
+		return previousStatus;
+	}
+
+	public LibraryRecord.Status getStatus() {
+		return status;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Format this event as a protocol frame
+	 */
+	public String toMessage() {
+		return "EVENT|" + type + "|" + recordId + "|" + recordType + "|" + studentId + "|" + status + "|"
+				+ (librarianId != null ? librarianId : "Unassigned");
+	}
+
+	@Override
+	public String toString() {
+		return "RecordEvent{" + "type=" + type + ", recordId='" + recordId + '\'' + ", previousStatus="
+				+ previousStatus + ", status=" + status + '}';
+	}
+}
@@ -0,0 +1,36 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * RecordEventBus fans out record changes to registered listeners
+ * Uses CopyOnWriteArrayList since listeners change rarely and publishing is frequent
+ */
+public class RecordEventBus {
+
+	private static CopyOnWriteArrayList<RecordEventListener> listeners = new CopyOnWriteArrayList<>();
+
+	public static void addListener(RecordEventListener listener) {
+		listeners.add(listener);
+	}
+
+	public static void removeListener(RecordEventListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Deliver an event to every listener. A failing listener is logged and
+	 * skipped so it cannot break the mutation that published the event.
+	 */
+	public static void publish(RecordEvent event) {
+		for (RecordEventListener listener : listeners) {
+			try {
+				listener.onRecordEvent(event);
+			} catch (RuntimeException e) {
+				System.err.println("Error delivering " + event + ": " + e.getMessage());
+			}
+		}
+	}
+
+	public static int getListenerCount() {
+		return listeners.size();
+	}
+}
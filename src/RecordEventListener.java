@@ -0,0 +1,8 @@
+/**
+ * Receives RecordEvents published by RecordStore mutations.
+ * Listeners are called on the mutating thread, so they must not block.
+ */
+public interface RecordEventListener {
+
+	void onRecordEvent(RecordEvent event);
+}
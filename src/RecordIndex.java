@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * RecordIndex keeps secondary indexes over records for QUERY:
+ * a sorted index on creation date (by epoch day) and one bitmap per status.
+ * Each indexed record ID, whatever its format, is given a dense ordinal
+ * that is its bit position in the bitmaps. Selective queries only look up the
+ * records the indexes point at instead of scanning the whole store.
+ * RecordStore keeps it up to date on every mutation.
+ */
+public class RecordIndex {
+    
+    // Key: epoch day, Value: IDs of records created that day
+    private static ConcurrentSkipListMap<Long, Set<String>> byDate = new ConcurrentSkipListMap<>();
+    
+    // One bitmap per status; each BitSet is guarded by its own monitor
+    private static EnumMap<LibraryRecord.Status, BitSet> byStatus = new EnumMap<>(LibraryRecord.Status.class);
+    
+    // Bit position of every indexed record ID; ordinals are never reused
+    private static ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<>();
+    
+    // Record ID at each ordinal (null once removed); grown under the ordinals lock
+    private static volatile String[] idsByOrdinal = new String[1024];
+    private static int nextOrdinal; // Guarded by ordinals
+    
+    // Serializes index maintenance per record (striped by record ID)
+    private static final Object[] stripes = new Object[64];
+    
+    static {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        for (LibraryRecord.Status status : LibraryRecord.Status.values()) {
+            byStatus.put(status, new BitSet());
+        }
+    }
+    
+    /**
+     * Rebuild all indexes (call after records are loaded)
+     * @param records Every record in the store
+     */
+    public static void rebuild(Collection<LibraryRecord> records) {
+        byDate.clear();
+        for (BitSet bits : byStatus.values()) {
+            synchronized (bits) {
+                bits.clear();
+            }
+        }
+        synchronized (ordinals) {
+            ordinals.clear();
+            idsByOrdinal = new String[1024];
+            nextOrdinal = 0;
+        }
+        for (LibraryRecord record : records) {
+            add(record);
+        }
+    }
+    
+    /**
+     * Index a new record
+     */
+    public static void add(LibraryRecord record) {
+        byDate.computeIfAbsent(record.getDate().toEpochDay(), k -> ConcurrentHashMap.newKeySet())
+                .add(record.getRecordId());
+        setBit(record.getStatus(), record.getRecordId(), true);
+    }
+    
+    /**
+     * Remove a record from every index
+     */
+    public static void remove(LibraryRecord record) {
+        Set<String> ids = byDate.get(record.getDate().toEpochDay());
+        if (ids != null) {
+            ids.remove(record.getRecordId());
+        }
+        synchronized (stripeFor(record.getRecordId())) {
+            for (LibraryRecord.Status status : LibraryRecord.Status.values()) {
+                setBit(status, record.getRecordId(), false);
+            }
+            synchronized (ordinals) {
+                Integer ordinal = ordinals.remove(record.getRecordId());
+                if (ordinal != null) {
+                    idsByOrdinal[ordinal] = null;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Move a record between status bitmaps. Record updates are lock-free, so
+     * two changes to the same record can get here in either order; the bits
+     * are set from the record's status as it is now, which leaves them right
+     * whichever change arrives last.
+     */
+    public static void statusChanged(String recordId, LibraryRecord.Status previous, LibraryRecord.Status current) {
+        if (previous == current) {
+            return;
+        }
+        synchronized (stripeFor(recordId)) {
+            LibraryRecord record = RecordStore.getLiveRecord(recordId);
+            LibraryRecord.Status now = record != null ? record.getStatus() : null;
+            if (now != null) {
+                setBit(now, recordId, true);
+            }
+            if (previous != now) {
+                setBit(previous, recordId, false);
+            }
+            if (current != now) {
+                setBit(current, recordId, false);
+            }
+        }
+    }
+    
+    private static Object stripeFor(String recordId) {
+        return stripes[Math.floorMod(recordId.hashCode(), stripes.length)];
+    }
+    
+    /**
+     * Find the records matching a query, ordered by date then ID
+     * @param query The filters
+     * @return Matching records
+     */
+    public static List<LibraryRecord> query(RecordQuery query) {
+        List<LibraryRecord> results = new ArrayList<>();
+        BitSet statusBits = query.getStatuses() != null ? statusBitmap(query) : null;
+        
+        if (query.hasDateRange()) {
+            // Walk only the days in range, using the status bitmap as a cheap pre-filter
+            for (Set<String> ids : dateRange(query).values()) {
+                for (String recordId : ids) {
+                    if (statusBits != null) {
+                        int bit = bitFor(recordId, false);
+                        if (bit >= 0 && !statusBits.get(bit)) {
+                            continue;
+                        }
+                    }
+                    collect(RecordStore.getRecordById(recordId), query, results);
+                }
+            }
+        } else if (statusBits != null) {
+            for (int bit = statusBits.nextSetBit(0); bit >= 0; bit = statusBits.nextSetBit(bit + 1)) {
+                String recordId = idFor(bit);
+                if (recordId != null) {
+                    collect(RecordStore.getRecordById(recordId), query, results);
+                }
+            }
+        } else {
+            // Nothing indexed to narrow by - fall back to a (parallel) full scan
+            results = RecordStore.scanRecords(query::matches);
+        }
+        
+        results.sort(RecordQuery.ORDER);
+        return results.size() > query.getLimit() ? results.subList(0, query.getLimit()) : results;
+    }
+    
+    /**
+     * Add a candidate to the results if it still matches (indexes may briefly
+     * lag a concurrent update, so every filter is re-checked)
+     */
+    private static void collect(LibraryRecord record, RecordQuery query, List<LibraryRecord> results) {
+        if (record != null && query.matches(record)) {
+            results.add(record);
+        }
+    }
+    
+    private static NavigableMap<Long, Set<String>> dateRange(RecordQuery query) {
+        long from = query.getFrom() != null ? query.getFrom().toEpochDay() : Long.MIN_VALUE;
+        long to = query.getTo() != null ? query.getTo().toEpochDay() : Long.MAX_VALUE;
+        return from > to ? new ConcurrentSkipListMap<>() : byDate.subMap(from, true, to, true);
+    }
+    
+    /**
+     * OR together the bitmaps of every status in the query
+     */
+    private static BitSet statusBitmap(RecordQuery query) {
+        BitSet combined = new BitSet();
+        for (LibraryRecord.Status status : query.getStatuses()) {
+            BitSet bits = byStatus.get(status);
+            synchronized (bits) {
+                combined.or(bits);
+            }
+        }
+        return combined;
+    }
+    
+    private static void setBit(LibraryRecord.Status status, String recordId, boolean value) {
+        int bit = bitFor(recordId, value);
+        if (bit < 0 || status == null) {
+            return;
+        }
+        BitSet bits = byStatus.get(status);
+        synchronized (bits) {
+            bits.set(bit, value);
+        }
+    }
+    
+    /**
+     * @return The record ID at a bit position, or null if it was removed
+     */
+    private static String idFor(int bit) {
+        String[] ids = idsByOrdinal;
+        return bit < ids.length ? ids[bit] : null;
+    }
+    
+    /**
+     * Map a record ID to its bit position
+     * @param assign Give the ID the next free ordinal if it has none
+     * @return Bit position or -1 if the ID has none
+     */
+    private static int bitFor(String recordId, boolean assign) {
+        Integer ordinal = ordinals.get(recordId);
+        if (ordinal != null || !assign) {
+            return ordinal != null ? ordinal : -1;
+        }
+        synchronized (ordinals) {
+            ordinal = ordinals.get(recordId);
+            if (ordinal == null) {
+                ordinal = nextOrdinal++;
+                String[] ids = idsByOrdinal;
+                if (ordinal == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[ordinal] = recordId;
+                idsByOrdinal = ids;
+                ordinals.put(recordId, ordinal);
+            }
+            return ordinal;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.EnumSet;
+
+/**
+ * RecordQuery holds the filters for a QUERY command. Any filter left null
+ * matches every record.
+ */
+public class RecordQuery {
+
+	// Order of query results: by date, then record ID
+	public static final Comparator<LibraryRecord> ORDER = Comparator.comparing(LibraryRecord::getDate)
+			.thenComparing(LibraryRecord::getRecordId);
+
+	private LocalDate from; // Inclusive
+	private LocalDate to; // Inclusive
+	private EnumSet<LibraryRecord.Status> statuses;
+	private LibraryRecord.RecordType recordType;
+	private String studentId;
+	private String librarianId;
+	private int limit = Integer.MAX_VALUE;
+	private boolean includeArchived; // Also search archive segments (slower)
+
+	/**
+	 * Parse filters in the form key=value (keys: from, to, status, type, student,
+	 * librarian, limit, archive). Status takes a comma separated list.
+	 * @param filters Filter strings
+	 * @return The parsed query
+	 * @throws IllegalArgumentException if a filter is malformed
+	 */
+	public static RecordQuery parse(String[] filters) {
+		RecordQuery query = new RecordQuery();
+
+		for (String filter : filters) {
+			int eq = filter.indexOf('=');
+			if (eq <= 0) {
+				throw new IllegalArgumentException("Expected key=value but got '" + filter + "'");
+			}
+			String key = filter.substring(0, eq).trim().toLowerCase();
+			String value = filter.substring(eq + 1).trim();
+
+			switch (key) {
+			case "from":
+				query.from = LocalDate.parse(value);
+				break;
+			case "to":
+				query.to = LocalDate.parse(value);
+				break;
+			case "status":
+				query.statuses = EnumSet.noneOf(LibraryRecord.Status.class);
+				for (String status : value.split(",")) {
+					query.statuses.add(LibraryRecord.Status.valueOf(status.trim().toUpperCase()));
+				}
+				break;
+			case "type":
+				query.recordType = LibraryRecord.RecordType.valueOf(value.toUpperCase());
+				break;
+			case "student":
+				query.studentId = value;
+				break;
+			case "librarian":
+				query.librarianId = value;
+				break;
+			case "limit":
+				query.limit = Integer.parseInt(value);
+				break;
+			case "archive":
+				query.includeArchived = Boolean.parseBoolean(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown filter '" + key + "'");
+			}
+		}
+
+		return query;
+	}
+
+	/**
+	 * Check a record against every filter
+	 */
+	public boolean matches(LibraryRecord record) {
+		if (from != null && record.getDate().isBefore(from)) {
+			return false;
+		}
+		if (to != null && record.getDate().isAfter(to)) {
+			return false;
+		}
+		if (statuses != null && !statuses.contains(record.getStatus())) {
+			return false;
+		}
+		if (recordType != null && record.getRecordType() != recordType) {
+			return false;
+		}
+		if (studentId != null && !studentId.equals(record.getStudentId())) {
+			return false;
+		}
+		if (librarianId != null && !librarianId.equals(record.getAssignedLibrarianId())) {
+			return false;
+		}
+		return true;
+	}
+
+	public boolean hasDateRange() {
+		return from != null || to != null;
+	}
+
+	// Getters and Setters
+	public LocalDate getFrom() {
+		return from;
+	}
+
+	public LocalDate getTo() {
+		return to;
+	}
+
+	public EnumSet<LibraryRecord.Status> getStatuses() {
+		return statuses;
+	}
+
+	public LibraryRecord.RecordType getRecordType() {
+		return recordType;
+	}
+
+	public String getStudentId() {
+		return studentId;
+	}
+
+	public void setStudentId(String studentId) {
+		this.studentId = studentId;
+	}
+
+	public String getLibrarianId() {
+		return librarianId;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public boolean isIncludeArchived() {
+		return includeArchived;
+	}
+}
@@ -1,50 +1,70 @@
 import java.io.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
 /**
  * RecordStore manages all library record data persistence and operations
- * Uses ConcurrentHashMap for thread-safe operations
+ * Uses a VersionedMap for thread-safe operations and snapshot reads
  */
 public class RecordStore {
     
     private static final String FILE_NAME = "records.dat";
     
-    // ConcurrentHashMap is thread-safe for multi-threaded server
-    // Key: recordId (unique), Value: LibraryRecord object
-    private static ConcurrentHashMap<String, LibraryRecord> records = new ConcurrentHashMap<>();
+    // Key: recordId (unique), Value: LibraryRecord object. Versioned, so
+    // listings read a pinned snapshot instead of copying the map
+    private static VersionedMap<String, LibraryRecord> records = new VersionedMap<>();
     
-    // Counter for generating unique record IDs
-    private static AtomicInteger recordCounter = new AtomicInteger(1000);
+    // Full-table scans run on their own pool so they never take session threads
+    // or the common pool; maps smaller than the threshold are scanned inline
+    private static final ForkJoinPool scanPool = new ForkJoinPool(
+            Integer.getInteger("library.scanParallelism", Runtime.getRuntime().availableProcessors()));
+    private static final long SCAN_PARALLELISM_THRESHOLD = Long.getLong("library.scanParallelismThreshold", 10_000);
+    
+    // Length of a loan, from the day a request is assigned
+    private static final int LOAN_DAYS = Integer.getInteger("library.loanDays", 14);
+    
+    // Pass as the expected version to update whatever version is current
+    public static final long ANY_VERSION = -1;
+    
+    // Block-based allocator for generating unique record IDs
+    private static volatile IdAllocator idAllocator = new IdAllocator("records.hwm", 1000);
+    
+    // Saves the map in the background, from a consistent snapshot of every record
+    private static Snapshotter snapshotter = new Snapshotter("records", FILE_NAME, () -> {
+        try (VersionedMap<String, LibraryRecord>.Snapshot snapshot = records.snapshot()) {
+            return snapshot.toMap();
+        }
+    });
     
     /**
      * Load records from file when server starts
      */
     public static void loadRecords() {
-        File file = new File(FILE_NAME);
+        if (!DataDirectory.isPersistent()) {
+            System.out.println("In-memory record store - nothing to load.");
+            return;
+        }
+        File file = DataDirectory.resolve(FILE_NAME).toFile();
         
         if (file.exists()) {
             try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
                 Object obj = ois.readObject();
                 
                 if (obj instanceof ConcurrentHashMap) {
-                    records.putAll((ConcurrentHashMap<String, LibraryRecord>) obj);
+                    ConcurrentHashMap<String, LibraryRecord> loaded = (ConcurrentHashMap<String, LibraryRecord>) obj;
+                    records.putAll(loaded);
                     
-                    // Update counter to be higher than any existing record ID
-                    int maxId = 1000;
-                     for (String recordId : records.keySet()) {
-                        try {
-                            int id = Integer.parseInt(recordId.substring(1)); // Remove "R" prefix
-                            if (id > maxId) {
-                                maxId = id;
-                            }
-                        } catch (NumberFormatException e) {
-                            // Skip invalid IDs
-                        }
+                    // Older data files have no persisted high-water mark, so rebuild it once
+                    if (!idAllocator.recover()) {
+                        idAllocator.recoverFrom(loaded.keySet());
                     }
-                    recordCounter.set(maxId + 1);
+                    RecordIndex.rebuild(loaded.values());
                 }
                 
                 System.out.println("Loaded " + records.size() + " records from file.");
@@ -53,21 +73,51 @@ public class RecordStore {
                 e.printStackTrace();
             }
         } else {
+            idAllocator.recover();
             System.out.println("No existing record file found. Starting with empty record list.");
         }
     }
     
     /**
-     * Save all records to file
+     * Save all records to file. The write happens on the snapshot thread (or
+     * at the next flushRecords), so callers never wait for serialization.
      */
-    public static synchronized void saveRecords() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE_NAME))) {
-            oos.writeObject(records);
-            System.out.println("Saved " + records.size() + " records to file.");
-        } catch (IOException e) {
-            System.err.println("Error saving records: " + e.getMessage());
-            e.printStackTrace();
-        }
+    public static void saveRecords() {
+        snapshotter.markDirty();
+    }
+    
+    /**
+     * Start saving records in the background
+     */
+    public static void startSnapshotter() {
+        snapshotter.start();
+    }
+    
+    /**
+     * Stop background saving and write any unsaved changes (server shutdown)
+     */
+    public static void stopSnapshotter() {
+        snapshotter.stop();
+        idAllocator.sync();
+    }
+    
+    /**
+     * Write any unsaved changes now
+     */
+    public static void flushRecords() {
+        snapshotter.flush();
+    }
+    
+    /**
+     * Drop every record from memory and start IDs again from the beginning, so
+     * the store can be loaded afresh (e.g. by an embedded server that was
+     * stopped). Nothing is written; stop the snapshotter first.
+     */
+    public static void clear() {
+        records.clear();
+        idAllocator = new IdAllocator("records.hwm", 1000);
+        RecordIndex.rebuild(List.of());
+        RecordViewCache.invalidateAll();
     }
     
     /**
@@ -76,24 +126,59 @@ public class RecordStore {
      * @param studentId ID of student creating the record
      * @return The created LibraryRecord or null if failed
      */
-    public static synchronized LibraryRecord createRecord(String recordTypeStr, String studentId) {
+    public static LibraryRecord createRecord(String recordTypeStr, String studentId) {
+        return createRecord(recordTypeStr, studentId, null);
+    }
+    
+    /**
+     * Create a new library record for a catalog title. A borrow request takes
+     * one of the title's free copies, which is given back when it is returned.
+     * @param recordTypeStr Type of record (NEW_BOOK_ENTRY or BORROW_REQUEST)
+     * @param studentId ID of student creating the record
+     * @param isbn Normalized ISBN of a catalog title, or null
+     * @return The created LibraryRecord, or null if the type is invalid or no copy is free
+     */
+    public static LibraryRecord createRecord(String recordTypeStr, String studentId, String isbn) {
         try {
             // Parse record type
             LibraryRecord.RecordType recordType = 
                 LibraryRecord.RecordType.valueOf(recordTypeStr.toUpperCase());
             
+            if (isbn != null && recordType == LibraryRecord.RecordType.BORROW_REQUEST && !BookCatalog.tryReserve(isbn)) {
+                System.err.println("No free copy of " + isbn + " for student " + studentId);
+                return null;
+            }
+            
             // Generate unique record ID (format: R1001, R1002, etc.)
-            String recordId = "R" + recordCounter.getAndIncrement();
+            String recordId = "R" + idAllocator.nextId();
+            
+            StoreMutationEvent event = new StoreMutationEvent();
+            event.begin();
             
             // Create the record
             LibraryRecord record = new LibraryRecord(recordId, recordType, studentId);
+            record.setIsbn(isbn);
             
-            // Add to map
-            records.put(recordId, record);
+            // Add to map and indexes (an imported record may already hold this ID)
+            while (records.putIfAbsent(recordId, record) != null) {
+                recordId = "R" + idAllocator.nextId();
+                record.setRecordId(recordId);
+            }
+            RecordIndex.add(record);
             
             // Save to file
             saveRecords();
             
+            RecordEventBus.publish(new RecordEvent(RecordEvent.Type.CREATED, record, null));
+            
+            if (event.shouldCommit()) {
+                event.store = "records";
+                event.operation = "CREATED";
+                event.key = recordId;
+                event.applied = true;
+                event.commit();
+            }
+            
             System.out.println("Record created: " + recordId + " by student " + studentId);
             return record;
             
@@ -104,20 +189,74 @@ public class RecordStore {
     }
     
     /**
-     * Get a record by its ID
+     * Add many records at once (bulk import). Records without an ID are given
+     * a new one; records whose ID is already taken are skipped, as are borrow
+     * requests holding a catalog title with no free copy. Does not save -
+     * the caller flushes once with saveRecords() after the last batch.
+     * @param batch Records to add
+     * @return Number of records added
+     */
+    public static int addRecords(Collection<LibraryRecord> batch) {
+        int added = 0;
+        
+        // Keep future allocations clear of imported IDs (one high-water mark write per batch)
+        long maxImportedId = -1;
+        for (LibraryRecord record : batch) {
+            if (record.getRecordId() != null && !record.getRecordId().isEmpty()) {
+                try {
+                    maxImportedId = Math.max(maxImportedId, Long.parseLong(record.getRecordId().substring(1)));
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    // Non-standard ID - keep it as is
+                }
+            }
+        }
+        if (maxImportedId >= 0) {
+            idAllocator.advancePast(maxImportedId);
+        }
+        
+        for (LibraryRecord record : batch) {
+            if (record.getRecordId() == null || record.getRecordId().isEmpty()) {
+                record.setRecordId("R" + idAllocator.nextId());
+            }
+            
+            // An active loan takes a copy, just as createRecord does
+            boolean reserved = BookCatalog.holdsCopy(record) && BookCatalog.getBook(record.getIsbn()) != null;
+            if (reserved && !BookCatalog.tryReserve(record.getIsbn())) {
+                System.err.println("No free copy of " + record.getIsbn() + " for imported record " + record.getRecordId());
+                continue;
+            }
+            
+            if (records.putIfAbsent(record.getRecordId(), record) != null) {
+                if (reserved) {
+                    BookCatalog.release(record.getIsbn());
+                }
+                continue;
+            }
+            RecordIndex.add(record);
+            RecordEventBus.publish(new RecordEvent(RecordEvent.Type.CREATED, record, null));
+            added++;
+        }
+        
+        return added;
+    }
+    
+    /**
+     * Get a record by its ID, falling back to the archive
      * @param recordId The record ID
      * @return LibraryRecord or null if not found
      */
     public static LibraryRecord getRecordById(String recordId) {
-        return records.get(recordId);
+        LibraryRecord record = records.get(recordId);
+        return record != null ? record : RecordArchive.getRecordById(recordId);
     }
     
     /**
-     * Get all records
-     * @return ConcurrentHashMap of all records
+     * Pin a consistent view of every record, e.g. for a full listing or
+     * export. Nothing is copied; close it when done.
+     * @return Snapshot of the record map
      */
-    public static ConcurrentHashMap<String, LibraryRecord> getAllRecords() {
-        return new ConcurrentHashMap<>(records);
+    public static VersionedMap<String, LibraryRecord>.Snapshot snapshotRecords() {
+        return records.snapshot();
     }
     
     /**
@@ -127,58 +266,178 @@ public class RecordStore {
      * @return List of records relevant to this user
      */
     public static List<LibraryRecord> getRecordsByUser(String userId, User.Role role) {
-        List<LibraryRecord> userRecords = new ArrayList<>();
+        if (role == User.Role.STUDENT) {
+            // Students see records they created
+            return scanRecords(record -> record.getStudentId().equals(userId));
+        } else if (role == User.Role.LIBRARIAN || role == User.Role.ADMIN) {
+            // Librarians see records assigned to them
+            return scanRecords(record -> userId.equals(record.getAssignedLibrarianId()));
+        }
         
-        for (LibraryRecord record : records.values()) {
-            if (role == User.Role.STUDENT) {
-                // Students see records they created
-                if (record.getStudentId().equals(userId)) {
-                    userRecords.add(record);
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Visit every record and collect the ones matching a filter. Large maps are
+     * split across the scan pool with the map's parallel forEach.
+     * @param filter Records to keep
+     * @return Matching records (in no particular order)
+     */
+    public static List<LibraryRecord> scanRecords(Predicate<LibraryRecord> filter) {
+        if (records.size() < SCAN_PARALLELISM_THRESHOLD) {
+            List<LibraryRecord> matches = new ArrayList<>();
+            records.forEachValue(Long.MAX_VALUE, record -> {
+                if (filter.test(record)) {
+                    matches.add(record);
                 }
-            } else if (role == User.Role.LIBRARIAN || role == User.Role.ADMIN) {
-                // Librarians see records assigned to them
-                if (userId.equals(record.getAssignedLibrarianId())) {
-                    userRecords.add(record);
+            });
+            return matches;
+        }
+        
+        // Bulk tasks forked from a scan pool worker stay in the scan pool
+        return scanPool.submit(() -> {
+            ConcurrentLinkedQueue<LibraryRecord> matches = new ConcurrentLinkedQueue<>();
+            records.forEachValue(SCAN_PARALLELISM_THRESHOLD, record -> {
+                if (filter.test(record)) {
+                    matches.add(record);
                 }
-            }
+            });
+            List<LibraryRecord> result = new ArrayList<>(matches);
+            return result;
+        }).join();
+    }
+    
+    /**
+     * Count the records matching a filter, in parallel for large maps
+     * @param filter Records to count
+     * @return Number of matching records
+     */
+    public static long countRecords(Predicate<LibraryRecord> filter) {
+        if (records.size() < SCAN_PARALLELISM_THRESHOLD) {
+            return records.countValues(Long.MAX_VALUE, filter);
+        }
+        return scanPool.submit(() -> records.countValues(SCAN_PARALLELISM_THRESHOLD, filter)).join();
+    }
+    
+    /**
+     * Find records matching a query, using the date and status indexes
+     * @param query The filters
+     * @return Matching records ordered by date
+     */
+    public static List<LibraryRecord> queryRecords(RecordQuery query) {
+        List<LibraryRecord> results = RecordIndex.query(query);
+        if (!query.isIncludeArchived()) {
+            return results;
         }
         
-        return userRecords;
+        List<LibraryRecord> combined = new ArrayList<>(results);
+        combined.addAll(RecordArchive.query(query));
+        combined.sort(RecordQuery.ORDER);
+        return combined.size() > query.getLimit() ? combined.subList(0, query.getLimit()) : combined;
     }
     
     /**
-     * Assign a librarian to a borrowing request
-     * @param recordId The record ID
-     * @param librarianId The librarian's ID
-     * @return true if successful, false otherwise
+     * Move RETURNED records older than minAgeDays to the archive. Synchronized
+     * so only one archive run happens at a time.
+     * @param minAgeDays Minimum age (by creation date)
+     * @return Number of records archived
      */
-    public static synchronized boolean assignLibrarian(String recordId, String librarianId) {
-        LibraryRecord record = records.get(recordId);
+    public static synchronized int archiveCompletedRecords(int minAgeDays) {
+        LocalDate cutoff = LocalDate.now().minusDays(minAgeDays);
+        List<LibraryRecord> completed = scanRecords(record -> record.getStatus() == LibraryRecord.Status.RETURNED
+                && record.getDate().isBefore(cutoff) && RecordArchive.numericId(record.getRecordId()) >= 0);
         
-        if (record == null) {
-            System.err.println("Record not found: " + recordId);
-            return false;
+        if (completed.isEmpty()) {
+            return 0;
         }
         
-        // Check if already assigned
-        if (record.isAssigned()) {
-            System.err.println("Record already assigned: " + recordId);
-            return false;
+        // Write the segment first - if that fails the records simply stay hot
+        try {
+            RecordArchive.writeSegment(completed);
+        } catch (IOException e) {
+            System.err.println("Error archiving records: " + e.getMessage());
+            return 0;
         }
         
-        // Assign librarian
-        record.setAssignedLibrarianId(librarianId);
-        
-        // Update status if it's a borrow request
-        if (record.isBorrowRequest() && record.getStatus() == LibraryRecord.Status.REQUESTED) {
-            record.setStatus(LibraryRecord.Status.BORROWED);
+        int archived = 0;
+        for (LibraryRecord record : completed) {
+            // Updates don't take the store lock, so only remove the version that was
+            // archived; a record changed since stays hot (and wins over its archived copy)
+            if (!records.remove(record.getRecordId(), record)) {
+                System.err.println("Record " + record.getRecordId() + " changed while being archived - keeping it");
+                continue;
+            }
+            RecordIndex.remove(record);
+            RecordEventBus.publish(new RecordEvent(RecordEvent.Type.ARCHIVED, record, record.getStatus()));
+            archived++;
         }
-        
-        // Save changes
         saveRecords();
         
+        return archived;
+    }
+    
+    /**
+     * Drop live records the archive already holds. A crash after an archive
+     * segment is written but before the store is saved without its records
+     * leaves them in both places. Call after RecordArchive.load.
+     * @return Number of records dropped
+     */
+    public static int dropArchivedCopies() {
+        int dropped = 0;
+        List<LibraryRecord> candidates = scanRecords(record -> record.getStatus() == LibraryRecord.Status.RETURNED
+                && RecordArchive.numericId(record.getRecordId()) >= 0);
+        for (LibraryRecord record : candidates) {
+            if (RecordArchive.holdsCurrentCopy(record) && records.remove(record.getRecordId(), record)) {
+                RecordIndex.remove(record);
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            saveRecords();
+            System.out.println("Dropped " + dropped + " records already in the archive.");
+        }
+        return dropped;
+    }
+    
+    /**
+     * Assign a librarian to a borrowing request
+     * @param recordId The record ID
+     * @param librarianId The librarian's ID
+     * @return true if successful, false otherwise
+     */
+    public static boolean assignLibrarian(String recordId, String librarianId) {
+        return assignLibrarian(recordId, ANY_VERSION, librarianId) != null;
+    }
+    
+    /**
+     * Assign a librarian only if the record is still at the expected version.
+     * Racing assignments are settled by a single compare-and-set; the losers
+     * see the record already assigned (or at a newer version) and fail.
+     * @param recordId The record ID
+     * @param expectedVersion Version the caller last saw, or ANY_VERSION
+     * @param librarianId The librarian's ID
+     * @return The record as this assignment stored it, or null if it failed
+     */
+    public static LibraryRecord assignLibrarian(String recordId, long expectedVersion, String librarianId) {
+        LibraryRecord updated = update(recordId, expectedVersion, RecordEvent.Type.ASSIGNED, record -> {
+            if (record.isAssigned()) {
+                return false;
+            }
+            record.setAssignedLibrarianId(librarianId);
+            
+            // Update status if it's a borrow request
+            if (record.isBorrowRequest() && record.getStatus() == LibraryRecord.Status.REQUESTED) {
+                setStatus(record, LibraryRecord.Status.BORROWED);
+            }
+            return true;
+        });
+        
+        if (updated == null) {
+            System.err.println("Could not assign record " + recordId + " - not found, already assigned or changed");
+            return null;
+        }
         System.out.println("Librarian " + librarianId + " assigned to record " + recordId);
-        return true;
+        return updated;
     }
     
     /**
@@ -187,35 +446,161 @@ public class RecordStore {
      * @param newStatus The new status
      * @return true if successful, false otherwise
      */
-    public static synchronized boolean updateRecordStatus(String recordId, LibraryRecord.Status newStatus) {
-        LibraryRecord record = records.get(recordId);
+    public static boolean updateRecordStatus(String recordId, LibraryRecord.Status newStatus) {
+        return updateRecordStatus(recordId, ANY_VERSION, newStatus) != null;
+    }
+    
+    /**
+     * Update the status of a record only if it is still at the expected version
+     * @param recordId The record ID
+     * @param expectedVersion Version the caller last saw, or ANY_VERSION
+     * @param newStatus The new status
+     * @return The record as this update stored it, or null if it failed
+     */
+    public static LibraryRecord updateRecordStatus(String recordId, long expectedVersion, LibraryRecord.Status newStatus) {
+        LibraryRecord updated = update(recordId, expectedVersion, RecordEvent.Type.STATUS_CHANGED, record -> {
+            setStatus(record, newStatus);
+            return true;
+        });
         
-        if (record == null) {
-            System.err.println("Record not found: " + recordId);
-            return false;
+        if (updated == null) {
+            System.err.println("Could not update record " + recordId + " - not found or changed");
+            return null;
         }
-        
-        record.setStatus(newStatus);
-        saveRecords();
-        
         System.out.println("Record " + recordId + " status updated to " + newStatus);
+        return updated;
+    }
+    
+    /**
+     * Change a record's status. Every transition into BORROWED (by assignment,
+     * a status update or a conditional update) starts a loan with a new due
+     * date, which OverdueTracker then watches.
+     */
+    private static void setStatus(LibraryRecord record, LibraryRecord.Status status) {
+        if (status == LibraryRecord.Status.BORROWED && record.getStatus() != LibraryRecord.Status.BORROWED) {
+            record.setDueDate(LocalDate.now().plusDays(LOAN_DAYS));
+        }
+        record.setStatus(status);
+    }
+    
+    /**
+     * Mark a loan overdue if it is still out. Called by OverdueTracker when a
+     * loan's due date passes.
+     * @param recordId The record ID
+     * @return true if the record was BORROWED and is now OVERDUE
+     */
+    public static boolean markOverdue(String recordId) {
+        LibraryRecord updated = update(recordId, ANY_VERSION, RecordEvent.Type.STATUS_CHANGED, record -> {
+            if (record.getStatus() != LibraryRecord.Status.BORROWED) {
+                return false;
+            }
+            record.setStatus(LibraryRecord.Status.OVERDUE);
+            return true;
+        });
+        
+        if (updated == null) {
+            return false;
+        }
+        System.out.println("Record " + recordId + " is overdue (due " + updated.getDueDate() + ")");
         return true;
     }
     
+    /**
+     * Replace a record with a changed copy using a compare-and-set on its map
+     * entry, so updates never take a lock. Stored records are never modified,
+     * which makes the identity of the stored object a safe CAS witness.
+     * @param recordId The record ID
+     * @param expectedVersion Only update this version, or ANY_VERSION to retry
+     *        on the latest version until the change applies or declines
+     * @param type Event to publish on success
+     * @param change Applied to a copy of the current record; returns false to
+     *        leave the record alone
+     * @return The stored copy, or null if the record is missing, not at the
+     *         expected version, or the change declined
+     */
+    private static LibraryRecord update(String recordId, long expectedVersion, RecordEvent.Type type,
+            Predicate<LibraryRecord> change) {
+        StoreMutationEvent event = new StoreMutationEvent();
+        event.begin();
+        LibraryRecord updated = applyUpdate(recordId, expectedVersion, type, change, event);
+        if (event.shouldCommit()) {
+            event.store = "records";
+            event.operation = type.name();
+            event.key = recordId;
+            event.applied = updated != null;
+            event.commit();
+        }
+        return updated;
+    }
+    
+    private static LibraryRecord applyUpdate(String recordId, long expectedVersion, RecordEvent.Type type,
+            Predicate<LibraryRecord> change, StoreMutationEvent event) {
+        while (true) {
+            LibraryRecord current = records.get(recordId);
+            if (current == null || (expectedVersion != ANY_VERSION && current.getVersion() != expectedVersion)) {
+                return null;
+            }
+            
+            LibraryRecord updated = new LibraryRecord(current);
+            if (!change.test(updated)) {
+                return null;
+            }
+            updated.setVersion(current.getVersion() + 1);
+            
+            // A status change can take or give back a copy of the record's catalog title
+            boolean takesCopy = !BookCatalog.holdsCopy(current) && BookCatalog.holdsCopy(updated);
+            boolean returnsCopy = BookCatalog.holdsCopy(current) && !BookCatalog.holdsCopy(updated);
+            if (takesCopy && !BookCatalog.tryReserve(updated.getIsbn())) {
+                return null;
+            }
+            
+            if (records.replace(recordId, current, updated)) {
+                if (returnsCopy) {
+                    BookCatalog.release(updated.getIsbn());
+                }
+                RecordIndex.statusChanged(recordId, current.getStatus(), updated.getStatus());
+                saveRecords();
+                RecordEventBus.publish(new RecordEvent(type, updated, current.getStatus()));
+                return updated;
+            }
+            // Someone else replaced it first - re-read and check again
+            if (takesCopy) {
+                BookCatalog.release(updated.getIsbn());
+            }
+            ServerMetrics.increment("records.casRetries");
+            event.retries++;
+        }
+    }
+    
+    /**
+     * Get a record from memory only (no archive fallback)
+     * @param recordId The record ID
+     * @return LibraryRecord or null if not in memory
+     */
+    public static LibraryRecord getLiveRecord(String recordId) {
+        return records.get(recordId);
+    }
+    
     /**
      * Get all unassigned borrow requests
      * @return List of unassigned borrow requests
      */
     public static List<LibraryRecord> getUnassignedRequests() {
-        List<LibraryRecord> unassigned = new ArrayList<>();
-        
-        for (LibraryRecord record : records.values()) {
-            if (record.isBorrowRequest() && !record.isAssigned()) {
-                unassigned.add(record);
-            }
-        }
-        
-        return unassigned;
+        return scanRecords(record -> record.isBorrowRequest() && !record.isAssigned());
+    }
+    
+    /**
+     * @return Number of open record snapshots
+     */
+    public static int getPinnedSnapshotCount() {
+        return records.getPinnedCount();
+    }
+    
+    /**
+     * @return Number of records holding old versions for open snapshots
+     */
+    public static int getRetainedVersionCount() {
+        return records.getRetainedCount();
     }
     
     /**
@@ -0,0 +1,147 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RecordViewCache keeps pre-rendered display lines for records and the full
+ * VIEW_ALL_RECORDS payload. Lines are only re-rendered when the record has
+ * changed, and the full payload is rebuilt from cached lines after any
+ * RecordStore mutation, so repeat views cost a map lookup.
+ */
+public class RecordViewCache {
+
+	private static final String ALL_RECORDS_HEADER = "\n=== All Library Records ===\n";
+
+	// Key: recordId, Value: rendered line and the record version it was rendered from
+	private static ConcurrentHashMap<String, CachedLine> lines = new ConcurrentHashMap<>();
+
+	// Bumped on every mutation so a payload built from older data is never published
+	private static AtomicLong generation = new AtomicLong();
+	private static volatile CachedPayload allRecords;
+
+	/**
+	 * A rendered line. Every change to a record bumps its version, so the
+	 * version tells whether the line is still current.
+	 */
+	private static class CachedLine {
+		final long version;
+		final String text;
+
+		CachedLine(long version, String text) {
+			this.version = version;
+			this.text = text;
+		}
+	}
+
+	private static class CachedPayload {
+		final long generation;
+		final String text;
+		volatile byte[] deflated; // Compressed lazily, the first time a compressing client asks
+
+		CachedPayload(long generation, String text) {
+			this.generation = generation;
+			this.text = text;
+		}
+	}
+
+	static {
+		RecordEventBus.addListener(event -> invalidate(event.getRecordId()));
+	}
+
+	/**
+	 * Get the display line for a record, rendering it only if it changed
+	 */
+	public static String render(LibraryRecord record) {
+		CachedLine cached = lines.get(record.getRecordId());
+		if (cached != null && cached.version == record.getVersion()) {
+			return cached.text;
+		}
+
+		String text = format(record);
+		lines.put(record.getRecordId(), new CachedLine(record.getVersion(), text));
+		return text;
+	}
+
+	/**
+	 * Get the full VIEW_ALL_RECORDS payload, rebuilding it if records changed
+	 */
+	public static String allRecordsView() {
+		return allRecordsPayload().text;
+	}
+
+	/**
+	 * Get the full VIEW_ALL_RECORDS payload DEFLATE-compressed, so repeat views
+	 * by compressing clients don't recompress it
+	 */
+	public static byte[] allRecordsViewDeflated() {
+		CachedPayload payload = allRecordsPayload();
+		byte[] deflated = payload.deflated;
+		if (deflated == null) {
+			deflated = Compression.deflate(payload.text);
+			payload.deflated = deflated;
+		}
+		return deflated;
+	}
+
+	private static CachedPayload allRecordsPayload() {
+		long current = generation.get();
+		CachedPayload cached = allRecords;
+		if (cached != null && cached.generation == current) {
+			return cached;
+		}
+
+		StringBuilder response = new StringBuilder(ALL_RECORDS_HEADER.length() + RecordStore.getRecordCount() * 96);
+		response.append(ALL_RECORDS_HEADER);
+
+		int count = 0;
+		try (VersionedMap<String, LibraryRecord>.Snapshot records = RecordStore.snapshotRecords()) {
+			for (LibraryRecord record : records.values()) {
+				response.append(render(record)).append("\n");
+				count++;
+			}
+		}
+		if (count == 0) {
+			response.append("No records found.\n");
+		}
+
+		CachedPayload payload = new CachedPayload(current, response.toString());
+		// Only publish if nothing changed while we were building
+		if (generation.get() == current) {
+			allRecords = payload;
+		}
+		return payload;
+	}
+
+	/**
+	 * Drop cached output for a record after it changes
+	 */
+	public static void invalidate(String recordId) {
+		generation.incrementAndGet();
+		lines.remove(recordId);
+	}
+
+	/**
+	 * Drop everything, e.g. after records are removed in bulk
+	 */
+	public static void invalidateAll() {
+		generation.incrementAndGet();
+		lines.clear();
+	}
+
+	/**
+	 * Format a library record for display
+	 */
+	private static String format(LibraryRecord record) {
+		StringBuilder line = new StringBuilder(128).append("ID: ").append(record.getRecordId()).append(" | Type: ")
+				.append(record.getRecordType()).append(" | Date: ").append(record.getDate()).append(" | Student: ")
+				.append(record.getStudentId()).append(" | Status: ").append(record.getStatus()).append(" | Librarian: ")
+				.append(record.getAssignedLibrarianId() != null ? record.getAssignedLibrarianId() : "Unassigned");
+		if (record.getDueDate() != null) {
+			line.append(" | Due: ").append(record.getDueDate());
+		}
+		if (record.getIsbn() != null) {
+			line.append(" | ISBN: ").append(record.getIsbn());
+		}
+		line.append(" | Version: ").append(record.getVersion());
+		return line.toString();
+	}
+}
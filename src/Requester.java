@@ -1,16 +1,20 @@
 
-import java.io.*;
-import java.net.*;
+import java.io.IOException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Interactive console client. All I/O goes through a single-connection
+ * LibraryClient, which also handles pushed updates, heartbeats and
+ * compression.
+ */
 public class Requester {
-	Socket requestSocket;
-	ObjectOutputStream out;
-	ObjectInputStream in;
-	String message;
+	LibraryClient client;
 	Scanner input;
 	Boolean running;
 	private User currentUser;
+	private boolean subscribed;
+	private boolean autoAssign;
 
 	Requester() {
 
@@ -19,14 +23,13 @@ public class Requester {
 
 	void run() {
 		try {
-			// 1. creating a socket to connect to the server
-
-			requestSocket = new Socket("127.0.0.1", 2004);
+			// 1. connect to the server - large replies are compressed unless
+			// run with -Drequester.compress=false
+			client = new LibraryClient("127.0.0.1", 2004, 1);
+			client.setCompression(Boolean.parseBoolean(System.getProperty("requester.compress", "true")));
+			client.setEventListener(event -> System.out.println("\n[Update] " + event.substring(6)));
+			client.connect();
 			System.out.println("Connected to localhost in port 2004");
-			// 2. get Input and Output streams
-			out = new ObjectOutputStream(requestSocket.getOutputStream());
-			out.flush();
-			in = new ObjectInputStream(requestSocket.getInputStream());
 
 			running = true;
 			while (running) {
@@ -40,18 +43,12 @@ public class Requester {
 			}
 
 			/// Client Conversation......
-		} catch (UnknownHostException unknownHost) {
-			System.err.println("You are trying to connect to an unknown host!");
 		} catch (IOException ioException) {
-			ioException.printStackTrace();
+			System.err.println("Could not connect to the server: " + ioException.getMessage());
 		} finally {
 			// 4: Closing connection
-			try {
-				in.close();
-				out.close();
-				requestSocket.close();
-			} catch (IOException ioException) {
-				ioException.printStackTrace();
+			if (client != null) {
+				client.close();
 			}
 		}
 	}
@@ -99,6 +96,10 @@ public class Requester {
 		}
 		System.out.println("5. Update Password");
 		System.out.println("6. Logout");
+		System.out.println("7. " + (subscribed ? "Stop Live Updates" : "Subscribe to Live Updates"));
+		if (currentUser.isLibrarian()) {
+			System.out.println("8. " + (autoAssign ? "Stop Automatic Assignment" : "Receive Requests Automatically"));
+		}
 		System.out.print("Choose an option: ");
 
 		try {
@@ -131,9 +132,22 @@ public class Requester {
 				handleUpdatePassword();
 				break;
 			case 6:
+				client.logout().get();
 				currentUser = null;
+				subscribed = false;
+				autoAssign = false;
 				System.out.println("Logged out successfully.");
 				break;
+			case 7:
+				handleToggleSubscription();
+				break;
+			case 8:
+				if (currentUser.isLibrarian()) {
+					handleToggleAutoAssign();
+				} else {
+					System.out.println("Invalid option.");
+				}
+				break;
 			default:
 				System.out.println("Invalid option. Please try again.");
 			}
@@ -177,10 +191,8 @@ public class Requester {
 			// Send registration request to server
 			String message = "REGISTER|" + name + "|" + studentId + "|" + email + "|" + password + "|" + department
 					+ "|" + role;
-			sendMessage(message);
 
-			// Receive response from server
-			String response = (String) in.readObject();
+			String response = client.send(message).get();
 
 			if (response.startsWith("SUCCESS")) {
 				System.out.println("\n✓ Registration successful! You can now login.");
@@ -206,20 +218,12 @@ public class Requester {
 			System.out.print("Password: ");
 			String password = input.nextLine();
 
-			// Send login request to server
-			String message = "LOGIN|" + email + "|" + password;
-			sendMessage(message);
-
-			// Receive response from server (User object if successful)
-			Object response = in.readObject();
-
-			if (response instanceof User) {
-				currentUser = (User) response;
-				System.out.println("\n✓ Login successful! Welcome, " + currentUser.getName());
-			} else if (response instanceof String) {
-				System.out.println("\n✗ Login failed: " + response);
-			}
+			// Send login request to server (User object if successful)
+			currentUser = client.login(email, password).get();
+			System.out.println("\n✓ Login successful! Welcome, " + currentUser.getName());
 
+		} catch (ExecutionException e) {
+			System.out.println("\n✗ " + e.getCause().getMessage());
 		} catch (Exception e) {
 			System.err.println("Login error: " + e.getMessage());
 		}
@@ -240,10 +244,8 @@ public class Requester {
 
 			// Send request to server
 			String message = "CREATE_RECORD|" + recordType + "|" + currentUser.getId();
-			sendMessage(message);
 
-			// Receive response
-			String response = (String) in.readObject();
+			String response = client.send(message).get();
 			System.out.println(response);
 
 		} catch (Exception e) {
@@ -259,10 +261,8 @@ public class Requester {
 			System.out.println("\n=== All Book Records ===");
 
 			// Send request to server
-			sendMessage("VIEW_ALL_RECORDS");
 
-			// Receive response
-			Object response = in.readObject();
+			Object response = client.send("VIEW_ALL_RECORDS").get();
 			System.out.println(response);
 
 		} catch (Exception e) {
@@ -281,10 +281,8 @@ public class Requester {
 
 			// Send request to server
 			String message = "ASSIGN_REQUEST|" + recordId + "|" + currentUser.getId();
-			sendMessage(message);
 
-			// Receive response
-			String response = (String) in.readObject();
+			String response = client.send(message).get();
 			System.out.println(response);
 
 		} catch (Exception e) {
@@ -301,10 +299,8 @@ public class Requester {
 
 			// Send request to server
 			String message = "VIEW_MY_RECORDS|" + currentUser.getId();
-			sendMessage(message);
 
-			// Receive response
-			Object response = in.readObject();
+			Object response = client.send(message).get();
 			System.out.println(response);
 
 		} catch (Exception e) {
@@ -335,10 +331,8 @@ public class Requester {
 
 			// Send request to server
 			String message = "UPDATE_PASSWORD|" + currentUser.getEmail() + "|" + oldPassword + "|" + newPassword;
-			sendMessage(message);
 
-			// Receive response
-			String response = (String) in.readObject();
+			String response = client.send(message).get();
 			System.out.println(response);
 
 		} catch (Exception e) {
@@ -346,13 +340,35 @@ public class Requester {
 		}
 	}
 
-	void sendMessage(String msg) {
+	/**
+	 * Handle subscribing to / unsubscribing from live record updates
+	 */
+	private void handleToggleSubscription() {
 		try {
-			out.writeObject(msg);
-			out.flush();
-			System.out.println("client>" + msg);
-		} catch (IOException ioException) {
-			ioException.printStackTrace();
+			String response = (subscribed ? client.unsubscribe() : client.subscribe()).get();
+			if (response.startsWith("SUCCESS")) {
+				subscribed = !subscribed;
+			}
+			System.out.println(response);
+
+		} catch (Exception e) {
+			System.err.println("Error changing subscription: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Handle opting in or out of automatic assignment (Librarian only)
+	 */
+	private void handleToggleAutoAssign() {
+		try {
+			String response = client.setAvailable(!autoAssign).get();
+			if (response.startsWith("SUCCESS")) {
+				autoAssign = !autoAssign;
+			}
+			System.out.println(response);
+
+		} catch (Exception e) {
+			System.err.println("Error changing availability: " + e.getMessage());
 		}
 	}
 
@@ -0,0 +1,126 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * ServerConfig holds the network and storage settings for LibraryServer.
+ * Defaults can be overridden with system properties, e.g.
+ * java -Dlibrary.maxSessions=500 LibraryServer
+ */
+public class ServerConfig {
+
+	/**
+	 * How sessions are given threads
+	 */
+	public enum ThreadModel {
+		POOLED, // Threads are kept for reuse between sessions
+		THREAD_PER_SESSION // Each session gets a fresh thread that exits with it
+	}
+
+	/**
+	 * Where the stores keep their data
+	 */
+	public enum StoreBackend {
+		FILE, // Loaded from and saved to the data directory
+		MEMORY // Nothing read or written; data is lost on stop
+	}
+
+	private int port = Integer.getInteger("library.port", 2004); // 0 = any free port
+	private int acceptBacklog = Integer.getInteger("library.acceptBacklog", 50); // Pending connections queued by the OS
+	private int maxSessions = Integer.getInteger("library.maxSessions", 200); // Concurrent client sessions
+	private int maxSessionsPerIp = Integer.getInteger("library.maxSessionsPerIp", 20); // Concurrent sessions from one address
+	private int idleTimeoutMillis = Integer.getInteger("library.idleTimeoutMillis", 600_000); // Evict sessions silent this long; 0 = never
+	private boolean tcpNoDelay = Boolean.parseBoolean(System.getProperty("library.tcpNoDelay", "true"));
+	private int socketBufferSize = Integer.getInteger("library.socketBufferSize", 0); // Send/receive buffer size; 0 = OS default
+	private ThreadModel threadModel = ThreadModel.valueOf(System.getProperty("library.threadModel", "POOLED").toUpperCase());
+	private StoreBackend storeBackend = StoreBackend.valueOf(System.getProperty("library.storeBackend", "FILE").toUpperCase());
+	private Path dataDir = Paths.get(System.getProperty("library.dataDir", "."));
+
+	// Getters and Setters
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getAcceptBacklog() {
+		return acceptBacklog;
+	}
+
+	public void setAcceptBacklog(int acceptBacklog) {
+		this.acceptBacklog = acceptBacklog;
+	}
+
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	public void setMaxSessions(int maxSessions) {
+		this.maxSessions = maxSessions;
+	}
+
+	public int getMaxSessionsPerIp() {
+		return maxSessionsPerIp;
+	}
+
+	public void setMaxSessionsPerIp(int maxSessionsPerIp) {
+		this.maxSessionsPerIp = maxSessionsPerIp;
+	}
+
+	public int getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(int idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	public int getSocketBufferSize() {
+		return socketBufferSize;
+	}
+
+	public void setSocketBufferSize(int socketBufferSize) {
+		this.socketBufferSize = socketBufferSize;
+	}
+
+	public ThreadModel getThreadModel() {
+		return threadModel;
+	}
+
+	public void setThreadModel(ThreadModel threadModel) {
+		this.threadModel = threadModel;
+	}
+
+	public StoreBackend getStoreBackend() {
+		return storeBackend;
+	}
+
+	public void setStoreBackend(StoreBackend storeBackend) {
+		this.storeBackend = storeBackend;
+	}
+
+	public Path getDataDir() {
+		return dataDir;
+	}
+
+	public void setDataDir(Path dataDir) {
+		this.dataDir = dataDir;
+	}
+
+	@Override
+	public String toString() {
+		return "ServerConfig{" + "port=" + port + ", acceptBacklog=" + acceptBacklog + ", maxSessions=" + maxSessions
+				+ ", maxSessionsPerIp=" + maxSessionsPerIp + ", idleTimeoutMillis=" + idleTimeoutMillis
+				+ ", tcpNoDelay=" + tcpNoDelay + ", socketBufferSize=" + socketBufferSize + ", threadModel=" + threadModel
+				+ ", storeBackend=" + storeBackend + ", dataDir=" + dataDir + '}';
+	}
+}
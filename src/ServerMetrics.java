@@ -0,0 +1,92 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * ServerMetrics keeps named counters and latency statistics for the server.
+ * Uses LongAdder so that hot-path updates from many threads don't contend.
+ */
+public class ServerMetrics {
+
+	// Key: metric name, Value: running count
+	private static ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+	// Key: metric name, Value: latency statistics
+	private static ConcurrentHashMap<String, Latency> latencies = new ConcurrentHashMap<>();
+
+	// Key: metric name, Value: current value, read when reporting
+	private static ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+	/**
+	 * Latency statistics for one operation
+	 */
+	private static class Latency {
+		final LongAdder count = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+		void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+		}
+	}
+
+	public static void increment(String name) {
+		add(name, 1);
+	}
+
+	public static void add(String name, long delta) {
+		counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+	}
+
+	/**
+	 * Record how long an operation took
+	 * @param name Metric name
+	 * @param nanos Duration in nanoseconds
+	 */
+	public static void recordLatency(String name, long nanos) {
+		latencies.computeIfAbsent(name, k -> new Latency()).record(nanos);
+	}
+
+	/**
+	 * Register a value that is read each time metrics are reported
+	 */
+	public static void registerGauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+
+	public static long getCount(String name) {
+		LongAdder counter = counters.get(name);
+		return counter != null ? counter.sum() : 0;
+	}
+
+	/**
+	 * Format all metrics for display, sorted by name
+	 */
+	public static String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\n=== Server Metrics ===\n");
+
+		for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue().sum()).append("\n");
+		}
+
+		for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue().getAsLong()).append("\n");
+		}
+
+		for (Map.Entry<String, Latency> entry : new TreeMap<>(latencies).entrySet()) {
+			Latency latency = entry.getValue();
+			long count = latency.count.sum();
+			double avgMs = count == 0 ? 0 : latency.totalNanos.sum() / (double) count / 1_000_000;
+			sb.append(String.format("%s: count=%d avg=%.3fms max=%.3fms%n", entry.getKey(), count, avgMs,
+					latency.maxNanos.get() / 1_000_000.0));
+		}
+
+		return sb.toString();
+	}
+}
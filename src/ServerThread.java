@@ -2,18 +2,38 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
- * ServerThread handles each client connection Each client gets their own thread
- * for concurrent access
+ * ServerThread handles each client connection Each client runs on its own
+ * pooled thread for concurrent access
  */
-public class ServerThread extends Thread {
+public class ServerThread implements Runnable {
 
 	private Socket socket;
+	private PooledBufferedOutputStream socketOut; // Underneath out; counts bytes sent
 	private ObjectOutputStream out;
 	private ObjectInputStream in;
 	private String message;
 	private User currentUser;
+	private EventSubscription subscription;
+	private boolean autoAssign; // This session opted in to automatic assignment
+	private volatile int compressionThreshold = -1; // Compress messages at least this long; -1 = off
+	private static final int MAX_MGET_IDS = Integer.getInteger("library.mgetMaxIds", 500);
+	private static final int MAX_SEARCH_RESULTS = Integer.getInteger("library.searchMaxResults", 200);
+	private volatile int commandCount;
+	private volatile String closeReason = "closed"; // Reported by ConnectionEvent
 
 	public ServerThread(Socket s) {
 		socket = s;
@@ -24,10 +44,12 @@ public class ServerThread extends Thread {
 		try {
 			System.out.println("Connection received from " + socket.getInetAddress().getHostName());
 
-			// Setup streams
-			out = new ObjectOutputStream(socket.getOutputStream());
+			// Setup streams - buffers come from the shared pool, so each
+			// reply goes out in a single socket write
+			socketOut = new PooledBufferedOutputStream(socket.getOutputStream());
+			out = new ObjectOutputStream(socketOut);
 			out.flush();
-			in = new ObjectInputStream(socket.getInputStream());
+			in = new ObjectInputStream(new PooledBufferedInputStream(socket.getInputStream()));
 
 			// Main server loop - handle client requests
 			boolean running = true;
@@ -35,12 +57,31 @@ public class ServerThread extends Thread {
 				try {
 					// Read message from client
 					message = (String) in.readObject();
+
+					// Heartbeats only keep the session alive - no reply, no logging
+					if (message.equals("HEARTBEAT")) {
+						continue;
+					}
 					System.out.println("Received: " + message);
+					commandCount++;
 
 					// Parse command (format: COMMAND|param1|param2|...)
 					String[] parts = message.split("\\|");
 					String command = parts[0];
 
+					// Time the command for JFR (nearly free when not recording)
+					CommandEvent event = new CommandEvent();
+					event.begin();
+					long bytesBefore = socketOut.getBytesWritten();
+
+					// Enforce per-user and per-command rate limits
+					if (isAuthenticated() && !command.equals("LOGOUT") && !command.equals("EXIT")
+							&& !RateLimiter.tryAcquire(currentUser, command)) {
+						sendMessage("ERROR|Rate limit exceeded - please slow down");
+						commitCommandEvent(event, command, bytesBefore);
+						continue;
+					}
+
 					// Route to appropriate handler
 					switch (command) {
 					case "REGISTER":
@@ -75,6 +116,70 @@ public class ServerThread extends Thread {
 						}
 						break;
 
+					case "CONDITIONAL_UPDATE":
+						if (isAuthenticated() && currentUser.isLibrarian()) {
+							handleConditionalUpdate(parts);
+						} else {
+							sendMessage("ERROR|Unauthorized - Librarian access required");
+						}
+						break;
+
+					case "GET_RECORD":
+						if (isAuthenticated()) {
+							handleGetRecord(parts);
+						} else {
+							sendMessage("ERROR|Not authenticated");
+						}
+						break;
+
+					case "MGET_RECORDS":
+						if (isAuthenticated()) {
+							handleMultiGetRecords(parts);
+						} else {
+							sendMessage("ERROR|Not authenticated");
+						}
+						break;
+
+					case "RECORD_HISTORY":
+						if (isAuthenticated()) {
+							handleRecordHistory(parts);
+						} else {
+							sendMessage("ERROR|Not authenticated");
+						}
+						break;
+
+					case "LOAN_STATS":
+						if (isAuthenticated() && currentUser.isLibrarian()) {
+							handleLoanStats(parts);
+						} else {
+							sendMessage("ERROR|Unauthorized - Librarian access required");
+						}
+						break;
+
+					case "BOOK_AVAILABILITY":
+						if (isAuthenticated()) {
+							handleBookAvailability(parts);
+						} else {
+							sendMessage("ERROR|Not authenticated");
+						}
+						break;
+
+					case "SEARCH_USERS":
+						if (isAuthenticated() && currentUser.isLibrarian()) {
+							handleSearchUsers(parts);
+						} else {
+							sendMessage("ERROR|Unauthorized - Librarian access required");
+						}
+						break;
+
+					case "QUERY":
+						if (isAuthenticated()) {
+							handleQuery(parts);
+						} else {
+							sendMessage("ERROR|Not authenticated");
+						}
+						break;
+
 					case "VIEW_MY_RECORDS":
 						if (isAuthenticated()) {
 							handleViewMyRecords(parts);
@@ -91,11 +196,83 @@ public class ServerThread extends Thread {
 						}
 						break;
 
+					case "SUBSCRIBE":
+						if (isAuthenticated()) {
+							handleSubscribe(parts);
+						} else {
+							sendMessage("ERROR|Not authenticated");
+						}
+						break;
+
+					case "UNSUBSCRIBE":
+						cancelSubscription();
+						sendMessage("SUCCESS|Unsubscribed");
+						break;
+
+					case "AVAILABLE":
+						if (isAuthenticated() && currentUser.isLibrarian()) {
+							handleAvailable(parts);
+						} else {
+							sendMessage("ERROR|Unauthorized - Librarian access required");
+						}
+						break;
+
+					case "STATS":
+						if (isAuthenticated() && currentUser.isLibrarian()) {
+							sendMessage(ServerMetrics.report());
+						} else {
+							sendMessage("ERROR|Unauthorized - Librarian access required");
+						}
+						break;
+
+					case "SET_RATE_LIMIT":
+						if (isAuthenticated() && currentUser.getRole() == User.Role.ADMIN) {
+							handleSetRateLimit(parts);
+						} else {
+							sendMessage("ERROR|Unauthorized - Admin access required");
+						}
+						break;
+
+					case "RATE_LIMITS":
+						if (isAuthenticated() && currentUser.isLibrarian()) {
+							sendMessage(RateLimiter.describeLimits());
+						} else {
+							sendMessage("ERROR|Unauthorized - Librarian access required");
+						}
+						break;
+
+					case "COMPRESS":
+						handleCompress(parts);
+						break;
+
+					case "IMPORT_USERS":
+					case "IMPORT_RECORDS":
+					case "EXPORT_USERS":
+					case "EXPORT_RECORDS":
+						if (isAuthenticated() && currentUser.getRole() == User.Role.ADMIN) {
+							handleBulk(command, parts);
+						} else {
+							sendMessage("ERROR|Unauthorized - Admin access required");
+						}
+						break;
+
+					case "ARCHIVE_NOW":
+						if (isAuthenticated() && currentUser.getRole() == User.Role.ADMIN) {
+							handleArchiveNow(parts);
+						} else {
+							sendMessage("ERROR|Unauthorized - Admin access required");
+						}
+						break;
+
 					case "LOGOUT":
-						currentUser = null;
+						endSession();
 						sendMessage("SUCCESS|Logged out");
 						break;
 
+					case "PING":
+						sendMessage("PONG");
+						break;
+
 					case "EXIT":
 						running = false;
 						break;
@@ -103,7 +280,15 @@ public class ServerThread extends Thread {
 					default:
 						sendMessage("ERROR|Unknown command: " + command);
 					}
+					commitCommandEvent(event, command, bytesBefore);
 
+				} catch (SocketTimeoutException e) {
+					// Nothing received within the idle timeout - free the session
+					closeReason = "idle";
+					ServerMetrics.increment("sessions.evicted.idle");
+					System.out.println("Evicting idle session from " + socket.getInetAddress().getHostAddress());
+					sendMessage("ERROR|Session closed after inactivity");
+					break;
 				} catch (ClassNotFoundException e) {
 					System.err.println("Invalid message format");
 					break;
@@ -111,12 +296,34 @@ public class ServerThread extends Thread {
 			}
 
 		} catch (IOException e) {
+			closeReason = "error";
 			System.err.println("Connection error: " + e.getMessage());
 		} finally {
 			cleanup();
 		}
 	}
 
+	private void commitCommandEvent(CommandEvent event, String command, long bytesBefore) {
+		if (event.shouldCommit()) {
+			event.command = command;
+			event.role = currentUser != null ? currentUser.getRole().name() : "NONE";
+			event.responseSize = socketOut.getBytesWritten() - bytesBefore;
+			event.commit();
+		}
+	}
+
+	int getCommandCount() {
+		return commandCount;
+	}
+
+	/**
+	 * Why the session ended: closed (EXIT), idle, or error (including the
+	 * client dropping the connection)
+	 */
+	String getCloseReason() {
+		return closeReason;
+	}
+
 	/**
 	 * Handle user registration Format:
 	 * REGISTER|name|studentId|email|password|department|role
@@ -178,6 +385,10 @@ public class ServerThread extends Thread {
 			User user = UserStore.validateLogin(email, password);
 
 			if (user != null) {
+				// Logging in again starts a new session; release the old user's opt-ins
+				if (currentUser != null) {
+					endSession();
+				}
 				currentUser = user;
 				// Send User object back to client
 				sendObject(user);
@@ -193,21 +404,62 @@ public class ServerThread extends Thread {
 
 	/**
 	 * Handle creating a library record Format: CREATE_RECORD|recordType|studentId
+	 * A catalog title can be named too:
+	 * CREATE_RECORD|NEW_BOOK_ENTRY|studentId|isbn|title|author[|copies] adds
+	 * copies of a title (librarians only), CREATE_RECORD|BORROW_REQUEST|studentId|isbn
+	 * takes one.
 	 */
 	private void handleCreateRecord(String[] parts) {
 		try {
-			if (parts.length != 3) {
+			if (parts.length != 3 && parts.length != 4 && parts.length != 6 && parts.length != 7) {
 				sendMessage("ERROR|Invalid format");
 				return;
 			}
 
 			String recordType = parts[1];
 			String studentId = parts[2];
+			String isbn = null;
+
+			if (parts.length > 3) {
+				LibraryRecord.RecordType type;
+				try {
+					type = LibraryRecord.RecordType.valueOf(recordType.toUpperCase());
+				} catch (IllegalArgumentException e) {
+					sendMessage("ERROR|Failed to create record");
+					return;
+				}
+				boolean newEntry = type == LibraryRecord.RecordType.NEW_BOOK_ENTRY;
+				if (newEntry ? parts.length < 6 : parts.length != 4) {
+					sendMessage("ERROR|Invalid format");
+					return;
+				}
+
+				isbn = BookCatalog.normalizeIsbn(parts[3]);
+				if (isbn == null) {
+					sendMessage("ERROR|Invalid ISBN");
+					return;
+				}
+
+				// Only librarians add stock; anyone else may only name a title already held
+				if (newEntry && currentUser.isLibrarian()) {
+					int copies = parts.length == 7 ? Integer.parseInt(parts[6]) : 1;
+					if (copies < 1) {
+						sendMessage("ERROR|Copies must be at least 1");
+						return;
+					}
+					BookCatalog.addCopies(isbn, parts[4], parts[5], copies);
+				} else if (BookCatalog.getBook(isbn) == null) {
+					sendMessage("ERROR|Unknown ISBN: " + isbn);
+					return;
+				}
+			}
 
 			// Create record through RecordStore
-			LibraryRecord record = RecordStore.createRecord(recordType, studentId);
+			LibraryRecord record = RecordStore.createRecord(recordType, studentId, isbn);
 
-			if (record != null) {
+			if (record == null && isbn != null && BookCatalog.getBook(isbn) != null) {
+				sendMessage("ERROR|No copies available: " + isbn);
+			} else if (record != null) {
 				sendMessage("SUCCESS|Record created with ID: " + record.getRecordId());
 			} else {
 				sendMessage("ERROR|Failed to create record");
@@ -223,21 +475,15 @@ public class ServerThread extends Thread {
 	 */
 	private void handleViewAllRecords() {
 		try {
-			StringBuilder response = new StringBuilder();
-			response.append("\n=== All Library Records ===\n");
+			String view = RecordViewCache.allRecordsView();
 
-			var records = RecordStore.getAllRecords();
-
-			if (records.isEmpty()) {
-				response.append("No records found.\n");
+			// The cache keeps a compressed copy, so repeat views skip the deflate
+			if (compressionThreshold >= 0 && view.length() >= compressionThreshold) {
+				sendObject(RecordViewCache.allRecordsViewDeflated());
 			} else {
-				for (LibraryRecord record : records.values()) {
-					response.append(formatRecord(record)).append("\n");
-				}
+				sendMessage(view);
 			}
 
-			sendMessage(response.toString());
-
 		} catch (Exception e) {
 			sendMessage("ERROR|Failed to retrieve records: " + e.getMessage());
 		}
@@ -270,6 +516,68 @@ public class ServerThread extends Thread {
 		}
 	}
 
+	/**
+	 * Handle an update that only applies if the record is still at the version
+	 * the client last saw Format:
+	 * CONDITIONAL_UPDATE|recordId|expectedVersion|STATUS|newStatus or
+	 * CONDITIONAL_UPDATE|recordId|expectedVersion|ASSIGN|librarianId
+	 */
+	private void handleConditionalUpdate(String[] parts) {
+		try {
+			if (parts.length != 5) {
+				sendMessage("ERROR|Invalid format");
+				return;
+			}
+
+			String recordId = parts[1];
+			long expectedVersion = Long.parseLong(parts[2]);
+			LibraryRecord updated;
+			LibraryRecord.Status newStatus = null;
+			switch (parts[3].toUpperCase()) {
+			case "STATUS":
+				newStatus = LibraryRecord.Status.valueOf(parts[4].toUpperCase());
+				updated = RecordStore.updateRecordStatus(recordId, expectedVersion, newStatus);
+				break;
+			case "ASSIGN":
+				updated = RecordStore.assignLibrarian(recordId, expectedVersion, parts[4]);
+				break;
+			default:
+				sendMessage("ERROR|Update must be STATUS or ASSIGN");
+				return;
+			}
+
+			// Report the version this update committed, not whatever a later writer left
+			if (updated != null) {
+				sendMessage("SUCCESS|Record " + recordId + " updated to version " + updated.getVersion());
+				return;
+			}
+			LibraryRecord record = RecordStore.getLiveRecord(recordId);
+			if (record == null) {
+				sendMessage("ERROR|Record not found: " + recordId);
+			} else if (record.getVersion() != expectedVersion) {
+				sendMessage("CONFLICT|" + recordId + "|version=" + record.getVersion() + "|status=" + record.getStatus());
+			} else if (newStatus == null && record.isAssigned()) {
+				sendMessage("ERROR|Record already assigned: " + recordId);
+			} else if (newStatus != null && takesCopy(record, newStatus)) {
+				sendMessage("ERROR|No copies available: " + record.getIsbn());
+			} else {
+				sendMessage("ERROR|Update rejected: " + recordId);
+			}
+
+		} catch (IllegalArgumentException e) {
+			sendMessage("ERROR|Invalid version or status");
+		}
+	}
+
+	/**
+	 * @return true if moving the record to the status would take a copy of its catalog title
+	 */
+	private static boolean takesCopy(LibraryRecord record, LibraryRecord.Status status) {
+		LibraryRecord moved = new LibraryRecord(record);
+		moved.setStatus(status);
+		return !BookCatalog.holdsCopy(record) && BookCatalog.holdsCopy(moved);
+	}
+
 	/**
 	 * Handle viewing records assigned to current user Format:
 	 * VIEW_MY_RECORDS|userId
@@ -302,6 +610,216 @@ public class ServerThread extends Thread {
 		}
 	}
 
+	/**
+	 * Handle looking up one record Format: GET_RECORD|recordId
+	 */
+	private void handleGetRecord(String[] parts) {
+		if (parts.length != 2) {
+			sendMessage("ERROR|Invalid format");
+			return;
+		}
+
+		LibraryRecord record = lookupRecord(parts[1]);
+		sendMessage(record != null ? formatCompact(record) : "ERROR|Record not found: " + parts[1]);
+	}
+
+	/**
+	 * Handle looking up several records at once Format:
+	 * MGET_RECORDS|recordId1,recordId2,... Replies with a RECORDS|count line,
+	 * then one RECORD|... or MISSING|recordId line per ID, in request order.
+	 */
+	private void handleMultiGetRecords(String[] parts) {
+		if (parts.length != 2) {
+			sendMessage("ERROR|Invalid format");
+			return;
+		}
+
+		String[] recordIds = parts[1].split(",");
+		if (recordIds.length > MAX_MGET_IDS) {
+			sendMessage("ERROR|Too many IDs - at most " + MAX_MGET_IDS + " per request");
+			return;
+		}
+
+		StringBuilder response = new StringBuilder(16 + recordIds.length * 80);
+		response.append("RECORDS|").append(recordIds.length);
+		for (String recordId : recordIds) {
+			recordId = recordId.trim();
+			LibraryRecord record = lookupRecord(recordId);
+			response.append('\n').append(record != null ? formatCompact(record) : "MISSING|" + recordId);
+		}
+		sendMessage(response.toString());
+	}
+
+	/**
+	 * Direct lookup by ID. Students can only see their own records; anyone
+	 * else's look the same as missing ones.
+	 */
+	private LibraryRecord lookupRecord(String recordId) {
+		LibraryRecord record = RecordStore.getRecordById(recordId);
+		if (record != null && !currentUser.isLibrarian() && !record.getStudentId().equals(currentUser.getId())) {
+			return null;
+		}
+		return record;
+	}
+
+	/**
+	 * Handle listing a record's status changes Format: RECORD_HISTORY|recordId
+	 * Replies with a HISTORY|count line, then one TRANSITION|time|from|to|librarian
+	 * line per change, oldest first (from is None when the record was created).
+	 */
+	private void handleRecordHistory(String[] parts) {
+		if (parts.length != 2) {
+			sendMessage("ERROR|Invalid format");
+			return;
+		}
+
+		LibraryRecord record = lookupRecord(parts[1]);
+		if (record == null) {
+			sendMessage("ERROR|Record not found: " + parts[1]);
+			return;
+		}
+
+		// Nothing happened to the record before the day it was created
+		long since = record.getDate().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		List<StatusHistory.Transition> transitions = StatusHistory.getHistory(record.getRecordId(), since);
+		StringBuilder response = new StringBuilder("HISTORY|").append(transitions.size());
+		for (StatusHistory.Transition transition : transitions) {
+			response.append("\nTRANSITION|").append(Instant.ofEpochMilli(transition.getTimestamp())).append('|')
+					.append(transition.getFrom() != null ? transition.getFrom() : "None").append('|')
+					.append(transition.getTo()).append('|')
+					.append(transition.getLibrarianId() != null ? transition.getLibrarianId() : "Unassigned");
+		}
+		sendMessage(response.toString());
+	}
+
+	/**
+	 * Handle loan duration statistics Format: LOAN_STATS[|from|to] with
+	 * yyyy-mm-dd dates (inclusive). Replies with a LOAN_STATS|count line, then
+	 * one LIBRARIAN|librarianId|loans|averageHours line per librarian, for
+	 * loans borrowed and returned within the range.
+	 */
+	private void handleLoanStats(String[] parts) {
+		if (parts.length != 1 && parts.length != 3) {
+			sendMessage("ERROR|Invalid format");
+			return;
+		}
+
+		long from = Long.MIN_VALUE;
+		long to = Long.MAX_VALUE;
+		if (parts.length == 3) {
+			try {
+				ZoneId zone = ZoneId.systemDefault();
+				from = LocalDate.parse(parts[1]).atStartOfDay(zone).toInstant().toEpochMilli();
+				to = LocalDate.parse(parts[2]).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+			} catch (DateTimeParseException e) {
+				sendMessage("ERROR|Invalid date: " + e.getParsedString());
+				return;
+			}
+		}
+
+		Map<String, StatusHistory.LoanStats> stats = StatusHistory.loanStats(from, to);
+		StringBuilder response = new StringBuilder("LOAN_STATS|").append(stats.size());
+		for (Map.Entry<String, StatusHistory.LoanStats> entry : stats.entrySet()) {
+			response.append("\nLIBRARIAN|").append(entry.getKey()).append('|')
+					.append(entry.getValue().getLoans()).append('|')
+					.append(String.format(Locale.ROOT, "%.1f", entry.getValue().getAverageMillis() / 3_600_000.0));
+		}
+		sendMessage(response.toString());
+	}
+
+	/**
+	 * Handle checking a catalog title Format: BOOK_AVAILABILITY|isbn
+	 * Replies with BOOK|isbn|title|author|available|total
+	 */
+	private void handleBookAvailability(String[] parts) {
+		if (parts.length != 2) {
+			sendMessage("ERROR|Invalid format");
+			return;
+		}
+
+		String isbn = BookCatalog.normalizeIsbn(parts[1]);
+		if (isbn == null) {
+			sendMessage("ERROR|Invalid ISBN");
+			return;
+		}
+		Book book = BookCatalog.getBook(isbn);
+		if (book == null) {
+			sendMessage("ERROR|Unknown ISBN: " + isbn);
+			return;
+		}
+		sendMessage("BOOK|" + isbn + "|" + book.getTitle() + "|" + book.getAuthor() + "|"
+				+ BookCatalog.getAvailableCopies(isbn) + "|" + book.getTotalCopies());
+	}
+
+	/**
+	 * Handle searching users by name, email or department Format:
+	 * SEARCH_USERS|query[|limit], e.g. SEARCH_USERS|jo smi dept:comp|20
+	 * Replies with a USERS|count line, then one USER|id|name|email|department|role line per match.
+	 */
+	private void handleSearchUsers(String[] parts) {
+		if (parts.length < 2 || parts.length > 3 || parts[1].isBlank()) {
+			sendMessage("ERROR|Invalid format");
+			return;
+		}
+
+		int limit = 50;
+		if (parts.length == 3) {
+			try {
+				limit = Integer.parseInt(parts[2].trim());
+			} catch (NumberFormatException e) {
+				sendMessage("ERROR|Invalid limit: " + parts[2]);
+				return;
+			}
+		}
+		limit = Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS));
+
+		long start = System.nanoTime();
+		List<User> matches = UserStore.searchUsers(parts[1], limit);
+		ServerMetrics.recordLatency("users.search", System.nanoTime() - start);
+
+		StringBuilder response = new StringBuilder(16 + matches.size() * 80);
+		response.append("USERS|").append(matches.size());
+		for (User user : matches) {
+			response.append("\nUSER|").append(user.getId()).append('|').append(user.getName()).append('|')
+					.append(user.getEmail()).append('|').append(user.getDepartmentName()).append('|')
+					.append(user.getRole());
+		}
+		sendMessage(response.toString());
+	}
+
+	/**
+	 * Handle querying records Format:
+	 * QUERY|from=2025-01-01|to=2025-12-31|status=BORROWED,REQUESTED|type=BORROW_REQUEST|student=id|librarian=id|limit=n
+	 * (every filter is optional; students only see their own records)
+	 */
+	private void handleQuery(String[] parts) {
+		try {
+			RecordQuery query = RecordQuery.parse(Arrays.copyOfRange(parts, 1, parts.length));
+			if (!currentUser.isLibrarian()) {
+				query.setStudentId(currentUser.getId());
+			}
+
+			var records = RecordStore.queryRecords(query);
+
+			StringBuilder response = new StringBuilder();
+			response.append("\n=== Query Results (").append(records.size()).append(") ===\n");
+			if (records.isEmpty()) {
+				response.append("No matching records.\n");
+			} else {
+				for (LibraryRecord record : records) {
+					response.append(formatRecord(record)).append("\n");
+				}
+			}
+
+			sendMessage(response.toString());
+
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			sendMessage("ERROR|Invalid query: " + e.getMessage());
+		} catch (Exception e) {
+			sendMessage("ERROR|Failed to run query: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Handle password update Format: UPDATE_PASSWORD|email|oldPassword|newPassword
 	 */
@@ -325,8 +843,8 @@ public class ServerThread extends Thread {
 			boolean success = UserStore.updatePassword(email, oldPassword, newPassword);
 
 			if (success) {
-				// Update current user's password
-				currentUser.setPassword(newPassword);
+				// Pick up the updated user (stored users are replaced, not modified)
+				currentUser = UserStore.getUserByEmail(email);
 				sendMessage("SUCCESS|Password updated successfully");
 			} else {
 				sendMessage("ERROR|Failed to update password - Check your current password");
@@ -337,14 +855,213 @@ public class ServerThread extends Thread {
 		}
 	}
 
+	/**
+	 * Handle subscribing to record change events Format:
+	 * SUBSCRIBE[|CREATED,ASSIGNED,STATUS_CHANGED,ARCHIVED]
+	 */
+	private void handleSubscribe(String[] parts) {
+		try {
+			EnumSet<RecordEvent.Type> types = EnumSet.allOf(RecordEvent.Type.class);
+			if (parts.length == 2) {
+				types = EnumSet.noneOf(RecordEvent.Type.class);
+				for (String type : parts[1].split(",")) {
+					types.add(RecordEvent.Type.valueOf(type.trim().toUpperCase()));
+				}
+			} else if (parts.length != 1) {
+				sendMessage("ERROR|Invalid format");
+				return;
+			}
+
+			// Replace any existing subscription so a connection has at most one
+			cancelSubscription();
+			sendMessage("SUCCESS|Subscribed to " + types);
+			subscription = new EventSubscription(this, currentUser, types);
+			subscription.start();
+
+		} catch (IllegalArgumentException e) {
+			sendMessage("ERROR|Invalid event type");
+		}
+	}
+
+	/**
+	 * Handle opting in or out of automatic assignment Format: AVAILABLE|ON or
+	 * AVAILABLE|OFF
+	 */
+	private void handleAvailable(String[] parts) {
+		if (parts.length != 2) {
+			sendMessage("ERROR|Invalid format");
+			return;
+		}
+
+		// Only this session's own opt-in counts, so ON twice or OFF first changes nothing
+		boolean on = parts[1].equalsIgnoreCase("ON");
+		if (on != autoAssign) {
+			autoAssign = on;
+			AssignmentDispatcher.setAvailable(currentUser.getId(), on);
+		}
+		sendMessage(on ? "SUCCESS|You will be assigned new requests automatically"
+				: "SUCCESS|Automatic assignment stopped");
+	}
+
+	/**
+	 * Handle negotiating response compression Format:
+	 * COMPRESS|DEFLATE[|threshold] or COMPRESS|OFF
+	 */
+	private void handleCompress(String[] parts) {
+		try {
+			if (parts.length < 2 || parts.length > 3) {
+				sendMessage("ERROR|Invalid format");
+				return;
+			}
+
+			if (parts[1].equalsIgnoreCase("OFF")) {
+				compressionThreshold = -1;
+				sendMessage("SUCCESS|Compression disabled");
+			} else if (parts[1].equalsIgnoreCase("DEFLATE")) {
+				int threshold = parts.length == 3 ? Integer.parseInt(parts[2]) : Compression.DEFAULT_THRESHOLD;
+				// Reply uncompressed so the client knows compression starts with the next message
+				sendMessage("SUCCESS|Compression enabled (threshold " + threshold + ")");
+				compressionThreshold = Math.max(0, threshold);
+			} else {
+				sendMessage("ERROR|Unsupported compression: " + parts[1]);
+			}
+
+		} catch (NumberFormatException e) {
+			sendMessage("ERROR|Invalid threshold");
+		}
+	}
+
+	/**
+	 * Handle bulk import/export of a CSV file on the server Format:
+	 * IMPORT_USERS|path, IMPORT_RECORDS|path, EXPORT_USERS|path or
+	 * EXPORT_RECORDS|path, with the path relative to the data directory
+	 */
+	private void handleBulk(String command, String[] parts) {
+		try {
+			if (parts.length != 2) {
+				sendMessage("ERROR|Invalid format");
+				return;
+			}
+
+			// Clients only name files inside the data directory
+			Path file = DataDirectory.resolveContained(parts[1]);
+			if (file == null) {
+				sendMessage("ERROR|Path must be inside the data directory");
+				return;
+			}
+			switch (command) {
+			case "IMPORT_USERS":
+				sendMessage("SUCCESS|Imported users: " + BulkLoader.importUsers(file));
+				break;
+			case "IMPORT_RECORDS":
+				sendMessage("SUCCESS|Imported records: " + BulkLoader.importRecords(file));
+				break;
+			case "EXPORT_USERS":
+				sendMessage("SUCCESS|Exported " + BulkLoader.exportUsers(file) + " users");
+				break;
+			case "EXPORT_RECORDS":
+				sendMessage("SUCCESS|Exported " + BulkLoader.exportRecords(file) + " records");
+				break;
+			}
+
+		} catch (IOException | InvalidPathException e) {
+			sendMessage("ERROR|Bulk operation failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Handle archiving completed records straight away Format:
+	 * ARCHIVE_NOW[|minAgeDays]
+	 */
+	private void handleArchiveNow(String[] parts) {
+		try {
+			int minAgeDays = parts.length > 1 ? Integer.parseInt(parts[1]) : RecordArchive.MIN_AGE_DAYS;
+			int archived = RecordStore.archiveCompletedRecords(minAgeDays);
+			sendMessage("SUCCESS|Archived " + archived + " records");
+
+		} catch (NumberFormatException e) {
+			sendMessage("ERROR|Invalid age");
+		}
+	}
+
+	/**
+	 * Handle changing a rate limit at runtime Format:
+	 * SET_RATE_LIMIT|ROLE|USER|COMMAND|key|ratePerSecond|burst (rate 0 removes the
+	 * limit)
+	 */
+	private void handleSetRateLimit(String[] parts) {
+		try {
+			if (parts.length != 5) {
+				sendMessage("ERROR|Invalid format");
+				return;
+			}
+
+			String scope = parts[1].toUpperCase();
+			String key = parts[2];
+			double rate = Double.parseDouble(parts[3]);
+			int burst = Integer.parseInt(parts[4]);
+
+			switch (scope) {
+			case "ROLE":
+				RateLimiter.setRoleLimit(User.Role.valueOf(key.toUpperCase()), rate, burst);
+				break;
+			case "USER":
+				RateLimiter.setUserLimit(key, rate, burst);
+				break;
+			case "COMMAND":
+				RateLimiter.setCommandLimit(key.toUpperCase(), rate, burst);
+				break;
+			default:
+				sendMessage("ERROR|Scope must be ROLE, USER or COMMAND");
+				return;
+			}
+
+			sendMessage("SUCCESS|Rate limit updated");
+
+		} catch (IllegalArgumentException e) {
+			sendMessage("ERROR|Invalid rate limit: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Release everything tied to the logged in user
+	 */
+	private void endSession() {
+		cancelSubscription();
+		if (currentUser != null && autoAssign) {
+			autoAssign = false;
+			AssignmentDispatcher.setAvailable(currentUser.getId(), false);
+		}
+		currentUser = null;
+	}
+
+	/**
+	 * Stop pushing events to this connection
+	 */
+	private void cancelSubscription() {
+		if (subscription != null) {
+			subscription.cancel();
+			subscription = null;
+		}
+	}
+
 	/**
 	 * Format a library record for display
 	 */
 	private String formatRecord(LibraryRecord record) {
-		return String.format("ID: %s | Type: %s | Date: %s | Student: %s | Status: %s | Librarian: %s",
-				record.getRecordId(), record.getRecordType(), record.getDate(), record.getStudentId(),
-				record.getStatus(),
-				record.getAssignedLibrarianId() != null ? record.getAssignedLibrarianId() : "Unassigned");
+		return RecordViewCache.render(record);
+	}
+
+	/**
+	 * Format a record for programs rather than people:
+	 * RECORD|recordId|recordType|date|studentId|status|librarian|dueDate|version|isbn
+	 */
+	private static String formatCompact(LibraryRecord record) {
+		return "RECORD|" + record.getRecordId() + "|" + record.getRecordType() + "|" + record.getDate() + "|"
+				+ record.getStudentId() + "|" + record.getStatus() + "|"
+				+ (record.getAssignedLibrarianId() != null ? record.getAssignedLibrarianId() : "Unassigned") + "|"
+				+ (record.getDueDate() != null ? record.getDueDate() : "None") + "|" + record.getVersion() + "|"
+				+ (record.getIsbn() != null ? record.getIsbn() : "None");
 	}
 
 	/**
@@ -355,12 +1072,17 @@ public class ServerThread extends Thread {
 	}
 
 	/**
-	 * Send a string message to the client
+	 * Send a string message to the client. Synchronized because the event
+	 * pusher writes to the same stream.
 	 */
-	void sendMessage(String msg) {
+	synchronized void sendMessage(String msg) {
 		try {
-			out.writeObject(msg);
-			out.flush();
+			if (compressionThreshold >= 0 && msg.length() >= compressionThreshold) {
+				writeAndFlush(Compression.deflate(msg));
+				System.out.println("Sent compressed: " + msg.length() + " chars");
+				return;
+			}
+			writeAndFlush(msg);
 			System.out.println("Sent: " + msg);
 		} catch (IOException e) {
 			System.err.println("Error sending message: " + e.getMessage());
@@ -370,20 +1092,31 @@ public class ServerThread extends Thread {
 	/**
 	 * Send an object to the client (e.g., User object after login)
 	 */
-	void sendObject(Object obj) {
+	synchronized void sendObject(Object obj) {
 		try {
-			out.writeObject(obj);
-			out.flush();
+			writeAndFlush(obj);
 			System.out.println("Sent object: " + obj.getClass().getSimpleName());
 		} catch (IOException e) {
 			System.err.println("Error sending object: " + e.getMessage());
 		}
 	}
 
+	/**
+	 * Write one object and push it to the socket. The stream is reset after
+	 * every write so its handle table doesn't keep every string ever sent
+	 * reachable for the life of the connection.
+	 */
+	private void writeAndFlush(Object obj) throws IOException {
+		out.writeObject(obj);
+		out.reset();
+		out.flush();
+	}
+
 	/**
 	 * Cleanup resources
 	 */
 	private void cleanup() {
+		endSession();
 		try {
 			if (in != null)
 				in.close();
@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one background snapshot of a store to disk
+ */
+@Name("library.Snapshot")
+@Label("Snapshot")
+@Category({ "Library", "Persistence" })
+@Description("A store written to disk by a Snapshotter")
+public class SnapshotEvent extends jdk.jfr.Event {
+
+	@Label("Store")
+	String store;
+
+	@Label("Entries")
+	int entries;
+
+	@Label("Bytes Written")
+	@DataAmount(DataAmount.BYTES)
+	long bytesWritten;
+
+	@Label("Succeeded")
+	boolean succeeded;
+}
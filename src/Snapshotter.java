@@ -0,0 +1,166 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Snapshotter writes a store to disk on a background thread.
+ * Writers call markDirty, which only bumps a counter. The snapshot thread
+ * waits a short delay so bursts of changes are saved together, captures the
+ * store (a cheap shallow copy - stored entries are never modified in place),
+ * serializes it to a temp file and renames that over the data file. A crash
+ * mid-write leaves the previous snapshot intact. With the MEMORY store backend
+ * changes are marked saved without writing anything.
+ */
+public class Snapshotter {
+
+	private static final long DELAY_MILLIS = Long.getLong("library.snapshotDelayMillis", 100);
+
+	private final String name;
+	private final String fileName;
+	private final Supplier<Object> capture;
+
+	// Changes requested / saved so far; guarded by this
+	private long dirtySeq;
+	private long savedSeq;
+
+	private final Object writeLock = new Object(); // One snapshot write at a time
+	private volatile Thread thread;
+
+	/**
+	 * @param name Store name, used for the thread name and metrics
+	 * @param fileName Data file to replace, relative to the data directory
+	 * @param capture Returns the object to serialize; must not block writers
+	 */
+	public Snapshotter(String name, String fileName, Supplier<Object> capture) {
+		this.name = name;
+		this.fileName = fileName;
+		this.capture = capture;
+	}
+
+	/**
+	 * Note that the store has changed. Never blocks on a snapshot.
+	 */
+	public synchronized void markDirty() {
+		dirtySeq++;
+		notifyAll();
+	}
+
+	/**
+	 * Start the background thread
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(this::run, name + "-snapshotter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the background thread and write any unsaved changes
+	 */
+	public void stop() {
+		Thread t = thread;
+		thread = null;
+		if (t != null) {
+			t.interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * Write a snapshot now if anything changed since the last one. Used at
+	 * shutdown and by offline tools that run without the background thread.
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			if (!DataDirectory.isPersistent()) {
+				markSaved();
+			} else if (isDirty()) {
+				writeSnapshot();
+			}
+		}
+	}
+
+	private synchronized boolean isDirty() {
+		return dirtySeq != savedSeq;
+	}
+
+	private synchronized void markSaved() {
+		savedSeq = dirtySeq;
+	}
+
+	private void run() {
+		try {
+			while (thread == Thread.currentThread()) {
+				synchronized (this) {
+					while (dirtySeq == savedSeq) {
+						wait();
+					}
+				}
+
+				// Let a burst of changes settle into one snapshot
+				Thread.sleep(DELAY_MILLIS);
+				flush();
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * Capture and write the store. Changes marked after the capture keep the
+	 * store dirty, so they go into the next snapshot.
+	 */
+	private void writeSnapshot() {
+		long start = System.nanoTime();
+		SnapshotEvent event = new SnapshotEvent();
+		event.begin();
+		long seq;
+		synchronized (this) {
+			seq = dirtySeq;
+		}
+
+		Path file = DataDirectory.resolve(fileName);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Object state = capture.get();
+			try (OutputStream os = Files.newOutputStream(tmp);
+					ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(os))) {
+				oos.writeObject(state);
+			}
+			if (event.shouldCommit()) {
+				event.entries = state instanceof Map ? ((Map<?, ?>) state).size() : 0;
+				event.bytesWritten = Files.size(tmp);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			// Stays dirty, so the thread tries again after the delay
+			System.err.println("Error saving " + name + " snapshot: " + e.getMessage());
+			ServerMetrics.increment("snapshot." + name + ".failed");
+			commitEvent(event, false);
+			return;
+		}
+
+		synchronized (this) {
+			savedSeq = Math.max(savedSeq, seq);
+		}
+		ServerMetrics.recordLatency("snapshot." + name, System.nanoTime() - start);
+		commitEvent(event, true);
+	}
+
+	private void commitEvent(SnapshotEvent event, boolean succeeded) {
+		if (event.shouldCommit()) {
+			event.store = name;
+			event.succeeded = succeeded;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,669 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StatusHistory keeps every status transition made through RecordStore
+ * (record ID, time, from and to status, librarian), so the REQUESTED ->
+ * BORROWED -> RETURNED timeline survives the record being overwritten.
+ *
+ * Transitions are appended, in time order, to fixed-size columnar segments:
+ * one array per field, with record and librarian IDs stored as codes into the
+ * segment's own string table. A time-range scan skips whole segments by their
+ * time range and binary-searches the time column of the rest; aggregates read
+ * only the columns they need. A full segment is sealed and never changes again.
+ *
+ * Segments are saved under history/ every flushSeconds (the open segment is
+ * rewritten until it is sealed), so a crash loses at most that many seconds of
+ * history. Saved segments are read back from disk when scanned, so only the
+ * open segment is held in memory.
+ *
+ * Besides its time range, each segment keeps a small Bloom filter of the IDs
+ * it mentions, so RECORD_HISTORY only reads segments that may hold the record.
+ * A segment loaded from disk has no filter until its first scan builds one.
+ *
+ * Transitions of one record made at nearly the same time by different
+ * threads can be appended out of order, so each also carries the record
+ * version it produced; per-record results are ordered by version.
+ *
+ * Segment layout: MAGIC, count, minTime, maxTime, strings, then the time,
+ * record, version, librarian, from and to columns
+ */
+public class StatusHistory {
+
+    private static final int SEGMENT_EVENTS = Integer.getInteger("library.historySegmentEvents", 8192);
+    private static final long FLUSH_SECONDS = Long.getLong("library.historyFlushSeconds", 30);
+
+    private static final String DIRECTORY = "history";
+    private static final int MAGIC = 0x4C485332; // "LHS2"
+    private static final int HEADER_BYTES = 24;
+    private static final byte NO_STATUS = -1;
+    private static final int FILTER_BITS = Math.max(64, SEGMENT_EVENTS * 8); // About 2% false positives when full
+
+    // Every segment, oldest first; the last one is open for appends
+    private static CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<>();
+    private static volatile Segment open;
+
+    // Guards appends to the open segment
+    private static final Object appendLock = new Object();
+    private static long lastTime;
+    private static int nextNumber = 1;
+
+    private static ScheduledExecutorService flusher;
+
+    /**
+     * One transition, as returned by scans
+     */
+    public static class Transition {
+        private final String recordId;
+        private final long timestamp;
+        private final long version;
+        private final LibraryRecord.Status from; // null when the record was created
+        private final LibraryRecord.Status to;
+        private final String librarianId;
+
+        Transition(Columns columns, int row) {
+            this.recordId = columns.strings[columns.records[row]];
+            this.timestamp = columns.times[row];
+            this.version = columns.versions[row];
+            this.from = columns.from[row] == NO_STATUS ? null : LibraryRecord.Status.values()[columns.from[row]];
+            this.to = LibraryRecord.Status.values()[columns.to[row]];
+            this.librarianId = columns.librarians[row] < 0 ? null : columns.strings[columns.librarians[row]];
+        }
+
+        public String getRecordId() {
+            return recordId;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return Version of the record this transition produced
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public LibraryRecord.Status getFrom() {
+            return from;
+        }
+
+        public LibraryRecord.Status getTo() {
+            return to;
+        }
+
+        public String getLibrarianId() {
+            return librarianId;
+        }
+    }
+
+    /**
+     * Completed loans handled by one librarian
+     */
+    public static class LoanStats {
+        private int loans;
+        private long totalMillis;
+
+        public int getLoans() {
+            return loans;
+        }
+
+        public long getAverageMillis() {
+            return loans == 0 ? 0 : totalMillis / loans;
+        }
+    }
+
+    /**
+     * A segment's columns. Only the appending thread writes them, and rows
+     * below the segment's count (and strings below stringCount) are written
+     * before the count is raised and never changed, so readers need no lock.
+     */
+    private static class Columns {
+        final long[] times;
+        final int[] records;
+        final long[] versions;
+        final int[] librarians; // -1 = unassigned
+        final byte[] from;
+        final byte[] to;
+        final String[] strings;
+        volatile int stringCount;
+        final HashMap<String, Integer> codes; // Open segment only
+
+        Columns(int capacity, int stringCapacity, boolean open) {
+            times = new long[capacity];
+            records = new int[capacity];
+            versions = new long[capacity];
+            librarians = new int[capacity];
+            from = new byte[capacity];
+            to = new byte[capacity];
+            strings = new String[stringCapacity];
+            codes = open ? new HashMap<>() : null;
+        }
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = stringCount;
+                strings[code] = value;
+                stringCount = code + 1; // Publishes the string to readers
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        int indexOf(String value) {
+            int count = stringCount;
+            for (int i = 0; i < count; i++) {
+                if (strings[i].equals(value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return First row at or after the time
+         */
+        int firstRow(long time, int count) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * A segment's time range, and its columns while they are not (all) on disk
+     */
+    private static class Segment {
+        final int number;
+        volatile Columns columns; // null once a sealed segment is saved
+        volatile int count;
+        volatile long minTime = Long.MAX_VALUE;
+        volatile long maxTime = Long.MIN_VALUE;
+        volatile boolean sealed;
+        int savedCount; // Rows in the segment file; guarded by flush()
+        volatile long[] idFilter; // null until built for a segment loaded from disk
+
+        Segment(int number, Columns columns) {
+            this.number = number;
+            this.columns = columns;
+            if (columns != null) {
+                idFilter = new long[FILTER_BITS / 64];
+            }
+        }
+
+        boolean overlaps(long from, long to) {
+            return count > 0 && minTime <= to && maxTime >= from;
+        }
+
+        /**
+         * @return false if no row of the segment mentions the ID
+         */
+        boolean mayContain(String id) {
+            long[] filter = idFilter;
+            if (filter == null) {
+                return true;
+            }
+            int hash = id.hashCode();
+            int second = Integer.reverse(hash * 0x9E3779B9);
+            return isSet(filter, hash) && isSet(filter, second);
+        }
+
+        /**
+         * Add an ID to the filter. Called before the row mentioning it is published.
+         */
+        static void addToFilter(long[] filter, String id) {
+            int hash = id.hashCode();
+            int second = Integer.reverse(hash * 0x9E3779B9);
+            setBit(filter, hash);
+            setBit(filter, second);
+        }
+
+        private static boolean isSet(long[] filter, int hash) {
+            int bit = Math.floorMod(hash, FILTER_BITS);
+            return (filter[bit >>> 6] & (1L << bit)) != 0;
+        }
+
+        private static void setBit(long[] filter, int hash) {
+            int bit = Math.floorMod(hash, FILTER_BITS);
+            filter[bit >>> 6] |= 1L << bit;
+        }
+
+        String fileName() {
+            return String.format("history-%06d.seg", number);
+        }
+    }
+
+    /**
+     * A loan being matched up by loanStats
+     */
+    private static class Loan {
+        long startVersion = -1;
+        long startTime;
+        long endVersion = -1;
+        long endTime;
+        String librarianId;
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        void visit(Columns columns, int row);
+    }
+
+    /**
+     * Records status changes as they are published
+     */
+    private static final RecordEventListener listener = event -> {
+        if (event.getType() != RecordEvent.Type.ARCHIVED && event.getPreviousStatus() != event.getStatus()) {
+            append(event.getRecordId(), event.getVersion(), event.getTimestamp(), event.getPreviousStatus(),
+                    event.getStatus(), event.getLibrarianId());
+        }
+    };
+
+    /**
+     * Read the header of every saved segment and open a new one for appends
+     */
+    public static void load() {
+        clear();
+        if (DataDirectory.isPersistent()) {
+            File[] files = DataDirectory.resolve(DIRECTORY).toFile().listFiles((dir, name) -> name.endsWith(".seg"));
+            if (files != null) {
+                Arrays.sort(files, Comparator.comparing(File::getName));
+                for (File file : files) {
+                    try {
+                        Segment segment = readHeader(file);
+                        segments.add(segment);
+                        nextNumber = Math.max(nextNumber, segment.number + 1);
+                        lastTime = Math.max(lastTime, segment.maxTime);
+                    } catch (IOException | NumberFormatException e) {
+                        System.err.println("Error loading history segment " + file.getName() + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        openSegment();
+        System.out.println("Loaded " + (segments.size() - 1) + " history segments (" + getEventCount() + " transitions).");
+    }
+
+    /**
+     * Start recording transitions, and saving them every flushSeconds
+     */
+    public static synchronized void start() {
+        RecordEventBus.addListener(listener);
+        if (flusher != null || !DataDirectory.isPersistent()) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "history-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(StatusHistory::flush, FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop recording and save whatever is unsaved
+     */
+    public static synchronized void stop() {
+        RecordEventBus.removeListener(listener);
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        flush();
+    }
+
+    public static void clear() {
+        synchronized (appendLock) {
+            segments.clear();
+            open = null;
+            lastTime = 0;
+            nextNumber = 1;
+        }
+    }
+
+    /**
+     * Append a transition to the open segment, sealing it when full. Times
+     * never go backwards, so each segment's time column stays sorted.
+     * @param version Version of the record the transition produced
+     * @param from Previous status, or null when the record was created
+     */
+    public static void append(String recordId, long version, long timestamp, LibraryRecord.Status from,
+            LibraryRecord.Status to, String librarianId) {
+        synchronized (appendLock) {
+            Segment segment = open;
+            if (segment == null || segment.count == SEGMENT_EVENTS) {
+                if (segment != null) {
+                    segment.sealed = true;
+                }
+                segment = openSegment();
+            }
+
+            long time = Math.max(timestamp, lastTime);
+            lastTime = time;
+
+            Columns columns = segment.columns;
+            int row = segment.count;
+            columns.times[row] = time;
+            columns.records[row] = columns.code(recordId);
+            Segment.addToFilter(segment.idFilter, recordId);
+            columns.versions[row] = version;
+            columns.librarians[row] = librarianId != null ? columns.code(librarianId) : -1;
+            columns.from[row] = from != null ? (byte) from.ordinal() : NO_STATUS;
+            columns.to[row] = (byte) to.ordinal();
+            if (row == 0) {
+                segment.minTime = time;
+            }
+            segment.maxTime = time;
+            segment.count = row + 1; // Publishes the row to readers
+        }
+    }
+
+    private static Segment openSegment() {
+        synchronized (appendLock) {
+            Segment segment = new Segment(nextNumber++, new Columns(SEGMENT_EVENTS, SEGMENT_EVENTS * 2, true));
+            segments.add(segment);
+            open = segment;
+            return segment;
+        }
+    }
+
+    /**
+     * Transitions between two times (inclusive), oldest first
+     */
+    public static List<Transition> scan(long fromMillis, long toMillis) {
+        List<Transition> transitions = new ArrayList<>();
+        forEachRow(fromMillis, toMillis, null, (columns, row) -> transitions.add(new Transition(columns, row)));
+        return transitions;
+    }
+
+    /**
+     * Every transition of one record, in version order
+     * @param sinceMillis No transition is older than this (e.g. the record's creation day)
+     */
+    public static List<Transition> getHistory(String recordId, long sinceMillis) {
+        List<Transition> transitions = new ArrayList<>();
+        forEachRow(sinceMillis, Long.MAX_VALUE, recordId, (columns, row) -> transitions.add(new Transition(columns, row)));
+        transitions.sort(Comparator.comparingLong(Transition::getVersion));
+        return transitions;
+    }
+
+    /**
+     * Average loan duration per librarian: time from BORROWED to RETURNED for
+     * loans that started and ended between the two times. Loans with no
+     * librarian are counted under "Unassigned".
+     * @return Key: librarian ID, sorted
+     */
+    public static Map<String, LoanStats> loanStats(long fromMillis, long toMillis) {
+        int borrowed = LibraryRecord.Status.BORROWED.ordinal();
+        int returned = LibraryRecord.Status.RETURNED.ordinal();
+        HashMap<String, Loan> open = new HashMap<>();
+        TreeMap<String, LoanStats> stats = new TreeMap<>();
+
+        forEachRow(fromMillis, toMillis, null, (columns, row) -> {
+            // Only the to column is read for rows that neither start nor end a loan
+            int to = columns.to[row];
+            if (to != borrowed && to != returned) {
+                return;
+            }
+            String recordId = columns.strings[columns.records[row]];
+            Loan loan = open.computeIfAbsent(recordId, id -> new Loan());
+            long version = columns.versions[row];
+
+            // The return may have been appended before the borrow; match them by version
+            if (to == borrowed) {
+                if (loan.startVersion < 0 || version < loan.startVersion) {
+                    loan.startVersion = version;
+                    loan.startTime = columns.times[row];
+                }
+            } else if (loan.endVersion < 0 || version < loan.endVersion) {
+                int librarian = columns.librarians[row];
+                loan.endVersion = version;
+                loan.endTime = columns.times[row];
+                loan.librarianId = librarian < 0 ? "Unassigned" : columns.strings[librarian];
+            }
+
+            if (loan.startVersion >= 0 && loan.endVersion >= 0) {
+                if (loan.endVersion > loan.startVersion) {
+                    LoanStats librarianStats = stats.computeIfAbsent(loan.librarianId, id -> new LoanStats());
+                    librarianStats.loans++;
+                    librarianStats.totalMillis += Math.max(0, loan.endTime - loan.startTime);
+                    open.remove(recordId);
+                } else {
+                    loan.endVersion = -1; // Returned before this borrow; wait for its own return
+                }
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * @return Number of transitions recorded
+     */
+    public static long getEventCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.count;
+        }
+        return count;
+    }
+
+    /**
+     * Visit rows between two times in time order, optionally only one record's
+     */
+    private static void forEachRow(long fromMillis, long toMillis, String recordId, RowVisitor visitor) {
+        for (Segment segment : segments) {
+            if (!segment.overlaps(fromMillis, toMillis)) {
+                continue;
+            }
+            int count = segment.count;
+            if (recordId != null && !segment.mayContain(recordId)) {
+                continue; // Record has no transitions in this segment
+            }
+            Columns columns = segment.columns;
+            if (columns == null) {
+                try {
+                    columns = readColumns(segment);
+                } catch (IOException e) {
+                    System.err.println("Error reading history segment " + segment.fileName() + ": " + e.getMessage());
+                    continue;
+                }
+                if (segment.idFilter == null) {
+                    long[] filter = new long[FILTER_BITS / 64];
+                    for (int i = 0; i < columns.stringCount; i++) {
+                        Segment.addToFilter(filter, columns.strings[i]);
+                    }
+                    segment.idFilter = filter;
+                }
+            }
+
+            int code = -1;
+            if (recordId != null && (code = columns.indexOf(recordId)) < 0) {
+                continue; // Record has no transitions in this segment
+            }
+            for (int row = columns.firstRow(fromMillis, count); row < count && columns.times[row] <= toMillis; row++) {
+                if (recordId == null || columns.records[row] == code) {
+                    visitor.visit(columns, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Save every segment with unsaved rows. Each is written to a temp file
+     * and renamed, so a crash never leaves a partial segment. A sealed
+     * segment's columns are dropped once it is saved.
+     */
+    public static synchronized void flush() {
+        if (!DataDirectory.isPersistent()) {
+            return;
+        }
+        File directory = DataDirectory.resolve(DIRECTORY).toFile();
+        directory.mkdirs();
+
+        for (Segment segment : segments) {
+            Columns columns = segment.columns;
+            boolean sealed = segment.sealed;
+            int count = segment.count;
+            if (columns == null) {
+                continue;
+            }
+            if (count == segment.savedCount) {
+                if (sealed) {
+                    segment.columns = null; // Saved by an earlier flush, sealed since
+                }
+                continue;
+            }
+            try {
+                writeSegment(new File(directory, segment.fileName()), segment, columns, count);
+                segment.savedCount = count;
+                if (sealed) {
+                    segment.columns = null;
+                }
+            } catch (IOException e) {
+                System.err.println("Error saving history segment " + segment.fileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void writeSegment(File file, Segment segment, Columns columns, int count) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        // Only strings used by the first count rows; later ones may still be being added
+        int stringCount = 0;
+        for (int row = 0; row < count; row++) {
+            stringCount = Math.max(stringCount, Math.max(columns.records[row], columns.librarians[row]) + 1);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            out.writeLong(columns.times[0]);
+            out.writeLong(columns.times[count - 1]);
+            out.writeInt(stringCount);
+            for (int i = 0; i < stringCount; i++) {
+                out.writeUTF(columns.strings[i]);
+            }
+            // Times as deltas from the previous row, mostly one or two bytes each
+            long previous = columns.times[0];
+            for (int row = 0; row < count; row++) {
+                writeVarLong(out, columns.times[row] - previous);
+                previous = columns.times[row];
+            }
+            for (int row = 0; row < count; row++) {
+                writeVarLong(out, columns.records[row]);
+            }
+            for (int row = 0; row < count; row++) {
+                writeVarLong(out, columns.versions[row]);
+            }
+            for (int row = 0; row < count; row++) {
+                writeVarLong(out, columns.librarians[row] + 1);
+            }
+            out.write(columns.from, 0, count);
+            out.write(columns.to, 0, count);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Segment readHeader(File file) throws IOException {
+        String name = file.getName();
+        Segment segment = new Segment(Integer.parseInt(name.substring(8, name.length() - 4)), null);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(readPrefix(file, HEADER_BYTES)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a history segment");
+            }
+            segment.count = in.readInt();
+            segment.minTime = in.readLong();
+            segment.maxTime = in.readLong();
+        }
+        segment.savedCount = segment.count;
+        segment.sealed = true;
+        return segment;
+    }
+
+    private static Columns readColumns(Segment segment) throws IOException {
+        File file = DataDirectory.resolve(DIRECTORY).resolve(segment.fileName()).toFile();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            in.skipBytes(HEADER_BYTES);
+            int count = segment.count;
+            int stringCount = in.readInt();
+            Columns columns = new Columns(count, stringCount, false);
+            for (int i = 0; i < stringCount; i++) {
+                columns.strings[i] = in.readUTF();
+            }
+            columns.stringCount = stringCount;
+            long time = segment.minTime;
+            for (int row = 0; row < count; row++) {
+                time += readVarLong(in);
+                columns.times[row] = time;
+            }
+            for (int row = 0; row < count; row++) {
+                columns.records[row] = (int) readVarLong(in);
+            }
+            for (int row = 0; row < count; row++) {
+                columns.versions[row] = readVarLong(in);
+            }
+            for (int row = 0; row < count; row++) {
+                columns.librarians[row] = (int) readVarLong(in) - 1;
+            }
+            in.readFully(columns.from);
+            in.readFully(columns.to);
+            return columns;
+        }
+    }
+
+    private static byte[] readPrefix(File file, int length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[length];
+            raf.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
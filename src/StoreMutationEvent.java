@@ -0,0 +1,41 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a change to RecordStore or UserStore. Record updates are
+ * lock-free, so their contention shows up as compare-and-set retries; user
+ * changes still take the UserStore lock, so they report the time spent
+ * waiting for it.
+ */
+@Name("library.StoreMutation")
+@Label("Store Mutation")
+@Category({ "Library", "Store" })
+@Description("A create or update in RecordStore or UserStore")
+@StackTrace(false)
+public class StoreMutationEvent extends jdk.jfr.Event {
+
+	@Label("Store")
+	String store;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Key")
+	@Description("Record ID or user email")
+	String key;
+
+	@Label("Lock Wait")
+	@Timespan(Timespan.NANOSECONDS)
+	long lockWait;
+
+	@Label("CAS Retries")
+	@Description("Times the update lost a race and was retried")
+	int retries;
+
+	@Label("Applied")
+	boolean applied;
+}
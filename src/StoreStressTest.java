@@ -0,0 +1,400 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * StoreStressTest hammers RecordStore and UserStore from many threads with
+ * randomized operations, then checks the invariants the server relies on:
+ * - every record ID handed out is unique and ends up in the store
+ * - a record is assigned exactly once, to the librarian whose call succeeded
+ * - no two users share an email or an ID, and both lookups agree
+ * - after a flush, dropping everything in memory and reloading from disk
+ *   (a crash after the last save) gives back exactly the in-memory state,
+ *   and new record IDs don't reuse old ones
+ *
+ * Runs against a temporary data directory and prints the throughput it
+ * achieved. Exits with status 1 if any invariant is broken:
+ * java StoreStressTest [threads] [seconds] [seed]
+ */
+public class StoreStressTest {
+
+	// Small pools so registrations collide on email and on ID
+	private static final int EMAIL_POOL = Integer.getInteger("stress.emailPool", 20_000);
+	private static final int ID_POOL = Integer.getInteger("stress.idPool", 20_000);
+
+	// Recently created record IDs that assignments and updates pick from (a power of two)
+	private static final int RECENT_RECORDS = 1024;
+
+	private enum Op {
+		REGISTER, CREATE_RECORD, ASSIGN, CONDITIONAL_ASSIGN, UPDATE_STATUS, LOOKUP
+	}
+
+	private final int threads;
+	private final long seconds;
+	private final long seed;
+
+	private final LongAdder[] attempts = new LongAdder[Op.values().length];
+	private final LongAdder[] successes = new LongAdder[Op.values().length];
+	private final List<String> violations = new ArrayList<>();
+
+	// What the threads were told succeeded, to check against the stores afterwards
+	private final ConcurrentHashMap<String, String> registeredIds = new ConcurrentHashMap<>(); // email -> id
+	private final ConcurrentHashMap<String, String> registeredEmails = new ConcurrentHashMap<>(); // id -> email
+	private final Map<String, Boolean> createdRecords = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> assignments = new ConcurrentHashMap<>(); // recordId -> librarian
+	private final AtomicReferenceArray<String> recent = new AtomicReferenceArray<>(RECENT_RECORDS);
+	private final AtomicInteger recentCount = new AtomicInteger();
+
+	public StoreStressTest(int threads, long seconds, long seed) {
+		this.threads = threads;
+		this.seconds = seconds;
+		this.seed = seed;
+		for (int i = 0; i < attempts.length; i++) {
+			attempts[i] = new LongAdder();
+			successes[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Run the workload and every check
+	 * @return Broken invariants (empty if none)
+	 */
+	public List<String> run() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("library-stress");
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		try {
+			DataDirectory.configure(dir, ServerConfig.StoreBackend.FILE);
+			UserStore.loadUsers();
+			RecordStore.loadRecords();
+			UserStore.startSnapshotter();
+			RecordStore.startSnapshotter();
+
+			out.println("Stressing stores with " + threads + " threads for " + seconds + "s (seed " + seed + ") in " + dir);
+
+			// The stores log every operation; that would measure the console, not the stores
+			PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+			System.setOut(discard);
+			System.setErr(discard);
+
+			long elapsed = hammer();
+
+			UserStore.stopSnapshotter();
+			RecordStore.stopSnapshotter();
+			checkRecords();
+			checkUsers();
+			checkReload();
+
+			System.setOut(out);
+			System.setErr(err);
+			report(elapsed);
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+			UserStore.clear();
+			RecordStore.clear();
+			deleteDirectory(dir);
+		}
+		return violations;
+	}
+
+	/**
+	 * Start every worker at once and let them run until the deadline
+	 * @return Nanoseconds the workers ran for
+	 */
+	private long hammer() throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		long[] deadline = new long[1];
+
+		for (int t = 0; t < threads; t++) {
+			Random random = new Random(seed + t);
+			String librarianId = "L" + t;
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+					while (System.nanoTime() < deadline[0]) {
+						step(random, librarianId);
+						// Vary the interleavings beyond what the scheduler does on its own
+						if (random.nextInt(16) == 0) {
+							Thread.yield();
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException e) {
+					violation("Worker " + librarianId + " failed: " + e);
+				} finally {
+					done.countDown();
+				}
+			}, "stress-" + t);
+			worker.start();
+		}
+
+		long begin = System.nanoTime();
+		deadline[0] = begin + seconds * 1_000_000_000L;
+		start.countDown(); // Publishes the deadline to the workers
+		done.await();
+		return System.nanoTime() - begin;
+	}
+
+	/**
+	 * One random operation, recording what the store said happened
+	 */
+	private void step(Random random, String librarianId) {
+		Op op = pick(random);
+		attempts[op.ordinal()].increment();
+		boolean succeeded = false;
+
+		switch (op) {
+		case REGISTER: {
+			String email = "user" + random.nextInt(EMAIL_POOL) + "@stress.test";
+			String id = "S" + random.nextInt(ID_POOL);
+			User user = new User("Stress User", id, email, "password", "Stress", User.Role.STUDENT);
+			succeeded = UserStore.addUser(user);
+			if (succeeded) {
+				if (registeredIds.putIfAbsent(email, id) != null) {
+					violation("Email registered twice: " + email);
+				}
+				if (registeredEmails.putIfAbsent(id, email) != null) {
+					violation("Student ID registered twice: " + id);
+				}
+			}
+			break;
+		}
+		case CREATE_RECORD: {
+			LibraryRecord record = RecordStore.createRecord("BORROW_REQUEST", "S" + random.nextInt(ID_POOL));
+			succeeded = record != null;
+			if (!succeeded) {
+				violation("createRecord failed");
+			} else if (createdRecords.putIfAbsent(record.getRecordId(), Boolean.TRUE) != null) {
+				violation("Record ID handed out twice: " + record.getRecordId());
+			} else {
+				recent.set(recentCount.getAndIncrement() & (RECENT_RECORDS - 1), record.getRecordId());
+			}
+			break;
+		}
+		case ASSIGN: {
+			String recordId = randomRecord(random);
+			if (recordId != null) {
+				succeeded = RecordStore.assignLibrarian(recordId, librarianId);
+				recordAssignment(succeeded, recordId, librarianId);
+			}
+			break;
+		}
+		case CONDITIONAL_ASSIGN: {
+			String recordId = randomRecord(random);
+			LibraryRecord record = recordId != null ? RecordStore.getLiveRecord(recordId) : null;
+			if (record != null) {
+				succeeded = RecordStore.assignLibrarian(recordId, record.getVersion(), librarianId) != null;
+				recordAssignment(succeeded, recordId, librarianId);
+			}
+			break;
+		}
+		case UPDATE_STATUS: {
+			String recordId = randomRecord(random);
+			if (recordId != null) {
+				LibraryRecord.Status status = random.nextBoolean() ? LibraryRecord.Status.RETURNED
+						: LibraryRecord.Status.OVERDUE;
+				succeeded = RecordStore.updateRecordStatus(recordId, status);
+			}
+			break;
+		}
+		default: {
+			String recordId = randomRecord(random);
+			succeeded = recordId != null && RecordStore.getRecordById(recordId) != null;
+			if (recordId != null && !succeeded) {
+				violation("Created record not found: " + recordId);
+			}
+			break;
+		}
+		}
+
+		if (succeeded) {
+			successes[op.ordinal()].increment();
+		}
+	}
+
+	private static Op pick(Random random) {
+		int roll = random.nextInt(100);
+		if (roll < 15) {
+			return Op.REGISTER;
+		} else if (roll < 40) {
+			return Op.CREATE_RECORD;
+		} else if (roll < 60) {
+			return Op.ASSIGN;
+		} else if (roll < 75) {
+			return Op.CONDITIONAL_ASSIGN;
+		} else if (roll < 85) {
+			return Op.UPDATE_STATUS;
+		}
+		return Op.LOOKUP;
+	}
+
+	private String randomRecord(Random random) {
+		int count = Math.min(recentCount.get(), RECENT_RECORDS);
+		return count == 0 ? null : recent.get(random.nextInt(count));
+	}
+
+	private void recordAssignment(boolean succeeded, String recordId, String librarianId) {
+		if (succeeded) {
+			String previous = assignments.putIfAbsent(recordId, librarianId);
+			if (previous != null) {
+				violation("Record " + recordId + " assigned twice: to " + previous + " and " + librarianId);
+			}
+		}
+	}
+
+	/**
+	 * Every record handed out is stored once, assigned only to the librarian whose call succeeded
+	 */
+	private void checkRecords() {
+		if (RecordStore.getRecordCount() != createdRecords.size()) {
+			violation("Store holds " + RecordStore.getRecordCount() + " records but " + createdRecords.size()
+					+ " were created");
+		}
+		for (String recordId : createdRecords.keySet()) {
+			LibraryRecord record = RecordStore.getLiveRecord(recordId);
+			if (record == null) {
+				violation("Created record missing: " + recordId);
+				continue;
+			}
+			String winner = assignments.get(recordId);
+			if (winner == null ? record.isAssigned() : !winner.equals(record.getAssignedLibrarianId())) {
+				violation("Record " + recordId + " is assigned to " + record.getAssignedLibrarianId()
+						+ " but the successful assignment was to " + winner);
+			}
+		}
+	}
+
+	/**
+	 * Every successful registration is stored, and email and ID lookups agree
+	 */
+	private void checkUsers() {
+		if (UserStore.getUserCount() != registeredIds.size()) {
+			violation("Store holds " + UserStore.getUserCount() + " users but " + registeredIds.size()
+					+ " registrations succeeded");
+		}
+		for (Map.Entry<String, String> entry : registeredIds.entrySet()) {
+			User byEmail = UserStore.getUserByEmail(entry.getKey());
+			User byId = UserStore.getUserById(entry.getValue());
+			if (byEmail == null || byEmail != byId || !byEmail.getId().equals(entry.getValue())) {
+				violation("User " + entry.getKey() + " / " + entry.getValue() + " is stored inconsistently");
+			}
+		}
+	}
+
+	/**
+	 * Drop everything in memory, reload from disk and compare
+	 */
+	private void checkReload() {
+		Map<String, String> recordsBefore = recordState();
+		Map<String, String> usersBefore = userState();
+
+		UserStore.clear();
+		RecordStore.clear();
+		UserStore.loadUsers();
+		RecordStore.loadRecords();
+
+		compare("record", recordsBefore, recordState());
+		compare("user", usersBefore, userState());
+
+		// The ID high-water mark must have survived too
+		LibraryRecord fresh = RecordStore.createRecord("BORROW_REQUEST", "S0");
+		if (fresh == null || createdRecords.containsKey(fresh.getRecordId())) {
+			violation("Record ID reused after reload: " + (fresh != null ? fresh.getRecordId() : null));
+		}
+	}
+
+	private static Map<String, String> recordState() {
+		Map<String, String> state = new HashMap<>();
+		for (LibraryRecord record : RecordStore.scanRecords(record -> true)) {
+			state.put(record.getRecordId(), record.getStatus() + "|" + record.getAssignedLibrarianId() + "|"
+					+ record.getDueDate() + "|" + record.getVersion());
+		}
+		return state;
+	}
+
+	private static Map<String, String> userState() {
+		Map<String, String> state = new HashMap<>();
+		try (VersionedMap<String, User>.Snapshot snapshot = UserStore.snapshotUsers()) {
+			for (User user : snapshot.values()) {
+				state.put(user.getEmail(), user.getId() + "|" + user.getRole());
+			}
+		}
+		return state;
+	}
+
+	private void compare(String kind, Map<String, String> before, Map<String, String> after) {
+		if (before.size() != after.size()) {
+			violation("Reloaded " + after.size() + " " + kind + "s but " + before.size() + " were in memory");
+		}
+		for (Map.Entry<String, String> entry : before.entrySet()) {
+			if (!entry.getValue().equals(after.get(entry.getKey()))) {
+				violation("Reloaded " + kind + " " + entry.getKey() + " differs: " + after.get(entry.getKey())
+						+ " vs " + entry.getValue() + " in memory");
+			}
+		}
+	}
+
+	private synchronized void violation(String message) {
+		if (violations.size() < 100) {
+			violations.add(message);
+		}
+	}
+
+	private void report(long elapsedNanos) {
+		double secondsRun = elapsedNanos / 1e9;
+		long total = 0;
+		System.out.println();
+		System.out.println(String.format("%-20s %12s %12s %12s", "Operation", "Attempts", "Succeeded", "Ops/s"));
+		for (Op op : Op.values()) {
+			long count = attempts[op.ordinal()].sum();
+			total += count;
+			System.out.println(String.format("%-20s %12d %12d %12.0f", op, count, successes[op.ordinal()].sum(),
+					count / secondsRun));
+		}
+		System.out.println(String.format("%-20s %12d %12s %12.0f", "TOTAL", total, "", total / secondsRun));
+		System.out.println();
+		System.out.println("Records: " + createdRecords.size() + ", assigned: " + assignments.size() + ", users: "
+				+ registeredIds.size());
+
+		if (violations.isEmpty()) {
+			System.out.println("All invariants held.");
+		} else {
+			System.out.println(violations.size() + " invariant violation(s):");
+			for (String violation : violations) {
+				System.out.println("  " + violation);
+			}
+		}
+	}
+
+	private static void deleteDirectory(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 4;
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+
+		List<String> violations = new StoreStressTest(threads, seconds, seed).run();
+		System.exit(violations.isEmpty() ? 0 : 1);
+	}
+}
@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * TimerWheel is a hashed timing wheel. Timeouts hash into one of wheelSize
+ * buckets by deadline tick; each tick only the current bucket is visited.
+ * A bucket holds timeouts from several revolutions; each node keeps its
+ * absolute deadline tick, so a long timeout is touched once per revolution
+ * rather than on every tick.
+ * Scheduling and cancelling are O(1) (buckets are intrusive doubly linked
+ * lists) and each pending timeout costs one small node.
+ * Expired payloads are handed to the callback on the ticker thread.
+ */
+public class TimerWheel<T> {
+
+	private final long tickMillis;
+	private final Node<T>[] wheel;
+	private final Consumer<T> onExpire;
+	private final long startMillis;
+	private long currentTick; // Next tick to process; guarded by this
+	private int size; // Pending timeouts; guarded by this
+	private Thread ticker;
+	private volatile boolean running;
+
+	/**
+	 * A pending timeout. Returned by schedule() so it can be cancelled.
+	 */
+	public static class Node<T> {
+		final T payload;
+		long deadlineTick;
+		int bucket = -1; // -1 once expired or cancelled
+		Node<T> prev;
+		Node<T> next;
+
+		Node(T payload) {
+			this.payload = payload;
+		}
+	}
+
+	/**
+	 * @param tickMillis Resolution of the wheel
+	 * @param wheelSize Number of buckets (one revolution = wheelSize ticks)
+	 * @param onExpire Called with the payload of each timeout that fires
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(long tickMillis, int wheelSize, Consumer<T> onExpire) {
+		this.tickMillis = tickMillis;
+		this.wheel = (Node<T>[]) new Node<?>[wheelSize];
+		this.onExpire = onExpire;
+		this.startMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Schedule a payload to expire at a wall-clock time. Deadlines in the past
+	 * fire on the next tick.
+	 * @param deadlineMillis Epoch milliseconds
+	 * @return Handle for cancel()
+	 */
+	public synchronized Node<T> schedule(T payload, long deadlineMillis) {
+		long deadlineTick = Math.max(currentTick, (deadlineMillis - startMillis + tickMillis - 1) / tickMillis);
+		Node<T> node = new Node<>(payload);
+		node.deadlineTick = deadlineTick;
+
+		int bucket = (int) (deadlineTick % wheel.length);
+		node.bucket = bucket;
+		node.next = wheel[bucket];
+		if (node.next != null) {
+			node.next.prev = node;
+		}
+		wheel[bucket] = node;
+		size++;
+		return node;
+	}
+
+	/**
+	 * Cancel a pending timeout (no effect if it already fired)
+	 * @return true if it was still pending
+	 */
+	public synchronized boolean cancel(Node<T> node) {
+		if (node.bucket < 0) {
+			return false;
+		}
+		unlink(node);
+		return true;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Start the ticker thread
+	 */
+	public synchronized void start(String threadName) {
+		if (running) {
+			return;
+		}
+		running = true;
+		ticker = new Thread(this::tickLoop, threadName);
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	public synchronized void stop() {
+		running = false;
+		if (ticker != null) {
+			ticker.interrupt();
+		}
+	}
+
+	/**
+	 * Ticker loop - processes every tick that has elapsed, then sleeps until the next one
+	 */
+	private void tickLoop() {
+		try {
+			while (running) {
+				long nowTick = (System.currentTimeMillis() - startMillis) / tickMillis;
+				List<T> expired = advanceTo(nowTick);
+				for (T payload : expired) {
+					try {
+						onExpire.accept(payload);
+					} catch (RuntimeException e) {
+						System.err.println("Error handling timeout for " + payload + ": " + e.getMessage());
+					}
+				}
+				long nextTickAt = startMillis + (nowTick + 1) * tickMillis;
+				Thread.sleep(Math.max(1, nextTickAt - System.currentTimeMillis()));
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * Process buckets up to and including nowTick
+	 * @return Payloads that expired
+	 */
+	private synchronized List<T> advanceTo(long nowTick) {
+		List<T> expired = new ArrayList<>();
+
+		// After a pause longer than one revolution, visiting every bucket once is enough
+		long fromTick = Math.max(currentTick, nowTick - wheel.length + 1);
+		for (long tick = fromTick; tick <= nowTick; tick++) {
+			Node<T> node = wheel[(int) (tick % wheel.length)];
+			while (node != null) {
+				Node<T> next = node.next;
+				if (node.deadlineTick <= nowTick) {
+					unlink(node);
+					expired.add(node.payload);
+				}
+				node = next;
+			}
+		}
+
+		currentTick = Math.max(currentTick, nowTick + 1);
+		return expired;
+	}
+
+	private void unlink(Node<T> node) {
+		if (node.prev != null) {
+			node.prev.next = node.next;
+		} else {
+			wheel[node.bucket] = node.next;
+		}
+		if (node.next != null) {
+			node.next.prev = node.prev;
+		}
+		node.prev = null;
+		node.next = null;
+		node.bucket = -1;
+		size--;
+	}
+}
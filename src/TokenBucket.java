@@ -0,0 +1,67 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TokenBucket is a lock-free rate limiter. It is implemented as a generic
+ * cell rate algorithm: the whole bucket state is one "theoretical arrival
+ * time", so a request costs a single compareAndSet and no allocation.
+ */
+public class TokenBucket {
+
+	private final double ratePerSecond;
+	private final int burst;
+	private final long intervalNanos; // Time to earn one token
+	private final long toleranceNanos; // How far ahead of schedule a caller may run
+	private final AtomicLong theoreticalArrival;
+
+	/**
+	 * @param ratePerSecond Sustained requests per second
+	 * @param burst Requests allowed back-to-back when the bucket is full
+	 */
+	public TokenBucket(double ratePerSecond, int burst) {
+		this.ratePerSecond = ratePerSecond;
+		this.burst = Math.max(1, burst);
+		this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+		this.toleranceNanos = intervalNanos * (this.burst - 1);
+		this.theoreticalArrival = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Take one token if available
+	 * @return true if the request is allowed
+	 */
+	public boolean tryAcquire() {
+		long now = System.nanoTime();
+		while (true) {
+			long tat = theoreticalArrival.get();
+			long start = Math.max(tat, now);
+			if (start - now > toleranceNanos) {
+				return false;
+			}
+			if (theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Give back a token taken by tryAcquire, e.g. when another limit then
+	 * rejected the request. A bucket never holds more than its burst, since
+	 * an arrival time in the past counts as now.
+	 */
+	public void refund() {
+		theoreticalArrival.addAndGet(-intervalNanos);
+	}
+
+	public double getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	@Override
+	public String toString() {
+		return ratePerSecond + "/s (burst " + burst + ")";
+	}
+}
@@ -0,0 +1,266 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * UserIndex answers SEARCH_USERS. Every user's name, email and department
+ * are split into lower-case tokens (the whole email is a token too), and
+ * each token maps to the emails of the users that contain it. Tokens are
+ * kept sorted, so all tokens starting with a prefix are one contiguous range
+ * of the map. A query term matches a user if any of the user's tokens starts
+ * with it; every term must match.
+ * UserStore keeps it up to date as users are added.
+ */
+public class UserIndex {
+
+    /**
+     * Indexed user fields. A term can be limited to one with "name:",
+     * "email:" or "dept:".
+     */
+    public enum Field {
+        NAME("name"), EMAIL("email"), DEPARTMENT("dept");
+
+        private final String prefix;
+
+        Field(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    // Tokens a term's size estimate looks at before treating the term as broad
+    private static final int ESTIMATE_BUDGET = 256;
+
+    // Key: field ordinal + token, Value: emails of users with that token.
+    // Most tokens (full emails, names with numbers) belong to one user, so a
+    // posting starts as an immutable one-element set and only becomes a
+    // concurrent set when a second user shares the token.
+    private static ConcurrentSkipListMap<String, Set<String>> postings = new ConcurrentSkipListMap<>();
+
+    /**
+     * Rebuild the index (call after users are loaded)
+     * @param users Every user in the store
+     */
+    public static void rebuild(Collection<User> users) {
+        clear();
+        for (User user : users) {
+            add(user);
+        }
+    }
+
+    /**
+     * Index a new user
+     */
+    public static void add(User user) {
+        for (Field field : Field.values()) {
+            for (String token : tokens(field, user)) {
+                postings.compute(key(field, token), (k, emails) -> addPosting(emails, user.getEmail()));
+            }
+        }
+    }
+
+    private static Set<String> addPosting(Set<String> emails, String email) {
+        if (emails == null) {
+            return Set.of(email);
+        }
+        if (emails.contains(email)) {
+            return emails;
+        }
+        if (emails.size() == 1) {
+            // Users are never removed, so a one-element posting is always the immutable one
+            Set<String> shared = ConcurrentHashMap.newKeySet();
+            shared.addAll(emails);
+            shared.add(email);
+            return shared;
+        }
+        emails.add(email);
+        return emails;
+    }
+
+    public static void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Find users matching every term of a query, e.g. "jo smith dept:comp"
+     * @param query Whitespace-separated prefixes, optionally field:prefix
+     * @param limit Most users to return
+     * @return Matching users, in token order
+     */
+    public static List<User> search(String query, int limit) {
+        List<Term> terms = new ArrayList<>();
+        for (String word : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            if (!word.isEmpty()) {
+                terms.add(Term.parse(word));
+            }
+        }
+
+        List<User> results = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0) {
+            return results;
+        }
+
+        // Walk the candidates of the narrowest term and check the rest per user,
+        // rather than building and intersecting every term's full match set
+        Term narrowest = terms.get(0);
+        if (terms.size() > 1) {
+            long narrowestSize = Long.MAX_VALUE;
+            for (Term term : terms) {
+                long size = term.estimateSize(narrowestSize);
+                if (size < narrowestSize) {
+                    narrowest = term;
+                    narrowestSize = size;
+                }
+            }
+        }
+
+        Set<String> seen = new LinkedHashSet<>();
+        for (Field field : narrowest.fields()) {
+            for (Set<String> emails : range(field, narrowest.prefix).values()) {
+                for (String email : emails) {
+                    if (!seen.add(email)) {
+                        continue;
+                    }
+                    User user = UserStore.getUserByEmail(email);
+                    if (user != null && matchesAll(user, terms)) {
+                        results.add(user);
+                        if (results.size() >= limit) {
+                            return results;
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean matchesAll(User user, List<Term> terms) {
+        for (Term term : terms) {
+            if (!term.matches(user)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * All postings for tokens of a field that start with the prefix
+     */
+    private static NavigableMap<String, Set<String>> range(Field field, String prefix) {
+        String from = key(field, prefix);
+        return postings.subMap(from, true, from + Character.MAX_VALUE, false);
+    }
+
+    private static String key(Field field, String token) {
+        return (char) ('0' + field.ordinal()) + token;
+    }
+
+    /**
+     * Lower-case tokens for one field of a user
+     */
+    static List<String> tokens(Field field, User user) {
+        String value;
+        switch (field) {
+            case NAME:
+                value = user.getName();
+                break;
+            case EMAIL:
+                value = user.getEmail();
+                break;
+            default:
+                value = user.getDepartmentName();
+                break;
+        }
+
+        List<String> tokens = new ArrayList<>();
+        if (value == null) {
+            return tokens;
+        }
+        value = value.toLowerCase(Locale.ROOT);
+        if (field == Field.EMAIL) {
+            tokens.add(value); // So a term like "john.smith@" matches the whole address
+        }
+
+        // Split on anything that isn't a letter or digit
+        int start = -1;
+        for (int i = 0; i <= value.length(); i++) {
+            boolean inToken = i < value.length() && Character.isLetterOrDigit(value.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                String token = value.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * One query term: a prefix, limited to one field or matching any
+     */
+    private static class Term {
+        final Field field; // null = any field
+        final String prefix;
+
+        Term(Field field, String prefix) {
+            this.field = field;
+            this.prefix = prefix;
+        }
+
+        static Term parse(String word) {
+            int colon = word.indexOf(':');
+            if (colon > 0) {
+                String name = word.substring(0, colon);
+                for (Field field : Field.values()) {
+                    if (field.prefix.equals(name)) {
+                        return new Term(field, word.substring(colon + 1));
+                    }
+                }
+            }
+            return new Term(null, word);
+        }
+
+        Field[] fields() {
+            return field != null ? new Field[] { field } : Field.values();
+        }
+
+        /**
+         * Number of users this term would visit, counting no further than the
+         * current best. A short prefix can cover a large part of the index, so
+         * after ESTIMATE_BUDGET tokens the term is simply treated as broad.
+         */
+        long estimateSize(long cap) {
+            long size = 0;
+            int visited = 0;
+            for (Field f : fields()) {
+                for (Map.Entry<String, Set<String>> entry : range(f, prefix).entrySet()) {
+                    size += entry.getValue().size();
+                    if (size >= cap || ++visited > ESTIMATE_BUDGET) {
+                        return Long.MAX_VALUE;
+                    }
+                }
+            }
+            return size;
+        }
+
+        boolean matches(User user) {
+            for (Field f : fields()) {
+                for (String token : tokens(f, user)) {
+                    if (token.startsWith(prefix)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,25 +1,42 @@
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class UserStore {
 
 	private static final String FILE_NAME = "user.dat";
-	private static ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+	private static VersionedMap<String, User> users = new VersionedMap<>(); // Key: email; listings read snapshots
+	private static ConcurrentHashMap<String, User> usersById = new ConcurrentHashMap<>(); // Secondary index on ID
+
+	// Saves users in the background from a consistent snapshot; stored users are replaced, never changed in place
+	private static Snapshotter snapshotter = new Snapshotter("users", FILE_NAME, () -> {
+		try (VersionedMap<String, User>.Snapshot snapshot = users.snapshot()) {
+			return snapshot.toMap();
+		}
+	});
 
 	// Load users from file(call this when server starts)
 	public static void loadUsers() {
-		File file = new File(FILE_NAME);
+		if (!DataDirectory.isPersistent()) {
+			System.out.println("In-memory user store - nothing to load");
+			return;
+		}
+		File file = DataDirectory.resolve(FILE_NAME).toFile();
 
 		if (file.exists()) {
 			try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
 				Object obj = ois.readObject();
 				if (obj instanceof ConcurrentHashMap) {
-					users.putAll((ConcurrentHashMap<String, User>) obj);
+					ConcurrentHashMap<String, User> loaded = (ConcurrentHashMap<String, User>) obj;
+					users.putAll(loaded);
+					for (User user : loaded.values()) {
+						usersById.put(user.getId(), user);
+					}
+					UserIndex.rebuild(loaded.values());
 				}
 				System.out.println("Loaded " + users.size() + " users from file.");
 			} catch (IOException | ClassNotFoundException e) {
@@ -31,17 +48,45 @@ public class UserStore {
 		}
 	}
 
-	public static synchronized void saveUsers() {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE_NAME))) {
-			oos.writeObject(users);
-			System.out.println("Saved " + users.size() + " users to file.");
-		} catch (IOException e) {
-			System.err.println("Error saving users: " + e.getMessage());
-			e.printStackTrace();
-		}
+	// Save users to file - written by the snapshot thread (or the next flushUsers)
+	public static void saveUsers() {
+		snapshotter.markDirty();
+	}
+
+	public static void startSnapshotter() {
+		snapshotter.start();
+	}
+
+	// Stop background saving and write any unsaved changes (server shutdown)
+	public static void stopSnapshotter() {
+		snapshotter.stop();
+	}
+
+	public static void flushUsers() {
+		snapshotter.flush();
+	}
+
+	// Drop every user from memory so the store can be loaded afresh; nothing is written
+	public static void clear() {
+		users.clear();
+		usersById.clear();
+		UserIndex.clear();
 	}
 	
-	 public static synchronized boolean addUser(User user) {
+	 public static boolean addUser(User user) {
+	        StoreMutationEvent event = new StoreMutationEvent();
+	        event.begin();
+	        long waitStart = System.nanoTime();
+	        boolean added;
+	        synchronized (UserStore.class) {
+	            event.lockWait = System.nanoTime() - waitStart;
+	            added = addUserLocked(user);
+	        }
+	        commitEvent(event, "REGISTER", user.getEmail(), added);
+	        return added;
+	    }
+	 
+	 private static boolean addUserLocked(User user) {
 	        // Check if email already exists
 	        if (users.containsKey(user.getEmail())) {
 	            System.out.println("Registration failed: Email already exists - " + user.getEmail());
@@ -49,34 +94,58 @@ public class UserStore {
 	        }
 	        
 	        // Check if student ID already exists
-	        for (User existingUser : users.values()) {
-	            if (existingUser.getId().equals(user.getId())) {
-	                System.out.println("Registration failed: Student ID already exists - " + user.getId());
-	                return false;
-	            }
+	        if (usersById.containsKey(user.getId())) {
+	            System.out.println("Registration failed: Student ID already exists - " + user.getId());
+	            return false;
 	        }
 	        
 	        // Add user (email is the key)
 	        users.put(user.getEmail(), user);
+	        usersById.put(user.getId(), user);
+	        UserIndex.add(user);
 	        saveUsers();
 	        System.out.println("User registered successfully: " + user.getEmail());
 	        return true;
 	    }
 	 
+	 /**
+	  * Add many users at once, skipping any whose email or ID is taken.
+	  * Does not save - the caller flushes once with saveUsers() after the
+	  * last batch.
+	  * @return Number of users added
+	  */
+	 public static synchronized int addUsers(Collection<User> batch) {
+	        int added = 0;
+	        for (User user : batch) {
+	            if (users.containsKey(user.getEmail()) || usersById.containsKey(user.getId())) {
+	                continue;
+	            }
+	            users.put(user.getEmail(), user);
+	            usersById.put(user.getId(), user);
+	            UserIndex.add(user);
+	            added++;
+	        }
+	        return added;
+	    }
+	 
 	 public static User getUserByEmail(String email) {
 	        return users.get(email);
 	    }
 	    
 	    public static User getUserById(String studentId) {
-	        for (User user : users.values()) {
-	            if (user.getId().equals(studentId)) {
-	                return user;
-	            }
-	        }
-	        return null;
+	        return usersById.get(studentId);
 	    }
 	    
 
+	    /**
+	     * Find users by name, email or department prefix, e.g. "jo smi dept:comp"
+	     * @param query Whitespace-separated prefixes; every one must match
+	     * @param limit Most users to return
+	     */
+	    public static List<User> searchUsers(String query, int limit) {
+	        return UserIndex.search(query, limit);
+	    }
+	    
 	    public static User validateLogin(String email, String password) {
 	        User user = users.get(email);
 	        
@@ -90,7 +159,20 @@ public class UserStore {
 	    }
 	    
 	    
-	    public static synchronized boolean updatePassword(String email, String oldPassword, String newPassword) {
+	    public static boolean updatePassword(String email, String oldPassword, String newPassword) {
+	        StoreMutationEvent event = new StoreMutationEvent();
+	        event.begin();
+	        long waitStart = System.nanoTime();
+	        boolean updated;
+	        synchronized (UserStore.class) {
+	            event.lockWait = System.nanoTime() - waitStart;
+	            updated = updatePasswordLocked(email, oldPassword, newPassword);
+	        }
+	        commitEvent(event, "UPDATE_PASSWORD", email, updated);
+	        return updated;
+	    }
+	    
+	    private static boolean updatePasswordLocked(String email, String oldPassword, String newPassword) {
 	        User user = users.get(email);
 	        
 	        if (user == null) {
@@ -103,14 +185,31 @@ public class UserStore {
 	            return false;
 	        }
 	        
-	        user.setPassword(newPassword);
+	        // Replace rather than modify, so a snapshot never sees a half-updated user
+	        User updated = new User(user.getName(), user.getId(), user.getEmail(), newPassword,
+	                user.getDepartmentName(), user.getRole());
+	        users.put(email, updated);
+	        usersById.put(updated.getId(), updated);
 	        saveUsers(); // Persist changes
 	        System.out.println("Password updated successfully for: " + email);
 	        return true;
 	    }
 	    
-	    public static ConcurrentHashMap<String, User> getAllUsers() {
-	        return new ConcurrentHashMap<>(users); // Returns a copy for safety
+	    private static void commitEvent(StoreMutationEvent event, String operation, String email, boolean applied) {
+	        if (event.shouldCommit()) {
+	            event.store = "users";
+	            event.operation = operation;
+	            event.key = email;
+	            event.applied = applied;
+	            event.commit();
+	        }
+	    }
+	    
+	    /**
+	     * Pin a consistent view of every user without copying; close it when done
+	     */
+	    public static VersionedMap<String, User>.Snapshot snapshotUsers() {
+	        return users.snapshot();
 	    }
 	    
 	    
@@ -0,0 +1,426 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * VersionedMap is a concurrent map with multi-version snapshot reads.
+ * Each key holds a chain of versions, newest first, stamped with a global
+ * commit sequence. A reader pins a snapshot (the latest committed sequence)
+ * and sees, for every key, the newest version no later than it - a
+ * consistent view of the whole map that costs nothing to take and is never
+ * copied. Writers install a new version with a compare-and-set on the key,
+ * so point reads and writes stay as cheap as a ConcurrentHashMap.
+ *
+ * Commits become visible in sequence order, so a snapshot never sees a
+ * later commit without an earlier one; writers never wait for each other.
+ * Versions older than the oldest pinned snapshot are unlinked by the next
+ * write to the key, or when the last reader that needed them closes its
+ * snapshot, and are then left to the GC.
+ * Removals leave a tombstone until no snapshot can see the removed value.
+ *
+ * Values are compared by identity, and must not be modified once stored.
+ */
+public class VersionedMap<K, V> {
+
+	// Finished commits not yet visible that can be tracked before a writer waits
+	private static final int COMMIT_WINDOW = 4096;
+
+	// Every this many commits, a writer also re-trims keys that kept old versions
+	private static final int RECLAIM_INTERVAL = 1024;
+
+	/**
+	 * One version of a key's value; value is null for a removal
+	 */
+	private static class Version<V> {
+		final V value;
+		final long seq;
+		volatile Version<V> older;
+
+		Version(V value, long seq, Version<V> older) {
+			this.value = value;
+			this.seq = seq;
+			this.older = older;
+		}
+	}
+
+	// Newest version of each key
+	private final ConcurrentHashMap<K, Version<V>> heads = new ConcurrentHashMap<>();
+	private final LongAdder size = new LongAdder();
+
+	// Last sequence handed to a writer / last sequence whose writes are all installed
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong visible = new AtomicLong();
+
+	// Sequences of finished commits, by seq % COMMIT_WINDOW
+	private final AtomicLongArray finished = new AtomicLongArray(COMMIT_WINDOW);
+
+	// Pinned snapshot sequence -> number of readers; guarded by itself
+	private final TreeMap<Long, Integer> pins = new TreeMap<>();
+	private volatile long oldestPin = Long.MAX_VALUE;
+
+	// Highest horizon any writer has trimmed to; a reader pinned below it retries
+	private final AtomicLong trimmedTo = new AtomicLong();
+
+	// Keys still holding versions that a pinned snapshot needs
+	private final Set<K> retained = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @return The latest value, or null
+	 */
+	public V get(K key) {
+		Version<V> head = heads.get(key);
+		return head != null ? head.value : null;
+	}
+
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @return Number of keys with a value (not counting tombstones)
+	 */
+	public int size() {
+		return size.intValue();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Store a value unless the key already has one
+	 * @return The existing value, or null if this one was stored
+	 */
+	public V putIfAbsent(K key, V value) {
+		while (true) {
+			Version<V> head = heads.get(key);
+			if (head != null && head.value != null) {
+				return head.value;
+			}
+			if (install(key, head, value)) {
+				size.increment();
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Store a value, replacing any current one
+	 */
+	public void put(K key, V value) {
+		while (true) {
+			Version<V> head = heads.get(key);
+			if (install(key, head, value)) {
+				if (head == null || head.value == null) {
+					size.increment();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Replace the value only if it is still the expected one
+	 * @return true if replaced
+	 */
+	public boolean replace(K key, V expected, V value) {
+		Version<V> head = heads.get(key);
+		return head != null && head.value == expected && expected != null && install(key, head, value);
+	}
+
+	/**
+	 * Remove the value only if it is still the expected one
+	 * @return true if removed
+	 */
+	public boolean remove(K key, V expected) {
+		Version<V> head = heads.get(key);
+		if (head == null || head.value != expected || expected == null || !install(key, head, null)) {
+			return false;
+		}
+		size.decrement();
+		return true;
+	}
+
+	/**
+	 * Load many entries, e.g. from a data file
+	 */
+	public void putAll(Map<? extends K, ? extends V> entries) {
+		for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Drop everything. Only safe while no snapshots are open and nothing is writing.
+	 */
+	public void clear() {
+		heads.clear();
+		retained.clear();
+		size.reset();
+	}
+
+	/**
+	 * Visit every latest value, in parallel across the common pool (or the
+	 * calling ForkJoinPool) once there are more than parallelismThreshold keys
+	 */
+	public void forEachValue(long parallelismThreshold, Consumer<? super V> action) {
+		heads.forEachValue(parallelismThreshold, head -> head.value, action);
+	}
+
+	/**
+	 * Count the latest values matching a filter, in parallel like forEachValue
+	 */
+	public long countValues(long parallelismThreshold, Predicate<? super V> filter) {
+		return heads.reduceValuesToLong(parallelismThreshold,
+				head -> head.value != null && filter.test(head.value) ? 1 : 0, 0, Long::sum);
+	}
+
+	/**
+	 * Pin a consistent view of the map as of the latest commit. Close it when
+	 * done so old versions can be reclaimed.
+	 */
+	public Snapshot snapshot() {
+		while (true) {
+			long seq;
+			synchronized (pins) {
+				seq = visible.get();
+				pins.merge(seq, 1, Integer::sum);
+				oldestPin = pins.firstKey();
+			}
+			// A writer that read the pins before ours was added may have trimmed
+			// past this sequence; take a newer one instead
+			if (trimmedTo.get() <= seq) {
+				return new Snapshot(seq);
+			}
+			unpin(seq);
+		}
+	}
+
+	/**
+	 * @return Number of open snapshots
+	 */
+	public int getPinnedCount() {
+		synchronized (pins) {
+			int count = 0;
+			for (int readers : pins.values()) {
+				count += readers;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * @return Number of keys holding old versions for open snapshots
+	 */
+	public int getRetainedCount() {
+		return retained.size();
+	}
+
+	/**
+	 * Install a new version over the expected head, under the next commit sequence
+	 * @return false if the head changed first
+	 */
+	private boolean install(K key, Version<V> head, V value) {
+		Version<V> version;
+		boolean installed;
+		long seq = clock.incrementAndGet();
+		try {
+			version = new Version<>(value, seq, head);
+			installed = head == null ? heads.putIfAbsent(key, version) == null : heads.replace(key, head, version);
+		} finally {
+			publish(seq);
+		}
+		if (installed) {
+			trim(key, version);
+		}
+		// Versions kept only because visibility lagged are trimmed here, so keys
+		// that are never written again don't wait for a reader to close
+		if (seq % RECLAIM_INTERVAL == 0 && !retained.isEmpty()) {
+			reclaim();
+		}
+		return installed;
+	}
+
+	/**
+	 * Mark a commit finished and advance the visible sequence over every
+	 * consecutive finished commit. Whichever writer finishes the oldest
+	 * outstanding commit advances past the later ones, so a slow writer only
+	 * delays visibility and never makes the others wait.
+	 */
+	private void publish(long seq) {
+		// A slot is reused every COMMIT_WINDOW commits; only wait if its last commit is still outstanding
+		while (visible.get() < seq - COMMIT_WINDOW) {
+			Thread.yield();
+		}
+		finished.set(slot(seq), seq);
+
+		long current;
+		while (finished.get(slot((current = visible.get()) + 1)) == current + 1) {
+			visible.compareAndSet(current, current + 1);
+		}
+	}
+
+	private static int slot(long seq) {
+		return (int) (seq & (COMMIT_WINDOW - 1));
+	}
+
+	/**
+	 * Oldest sequence any current or future snapshot can read
+	 */
+	private long horizon() {
+		long horizon = Math.min(oldestPin, visible.get());
+		trimmedTo.accumulateAndGet(horizon, Math::max);
+		// Re-check: a reader that pinned before trimmedTo was raised must be respected
+		return Math.min(horizon, oldestPin);
+	}
+
+	/**
+	 * Unlink versions of a key that no snapshot can read any more
+	 */
+	private void trim(K key, Version<V> head) {
+		long horizon = horizon();
+		Version<V> keep = head;
+		while (keep != null && keep.seq > horizon) {
+			keep = keep.older;
+		}
+		if (keep == null) {
+			// Every version is newer than the horizon; older ones or a tombstone wait for the readers
+			if (head.older != null || head.value == null) {
+				retained.add(key);
+			}
+			return;
+		}
+		keep.older = null;
+
+		if (keep != head) {
+			retained.add(key);
+		} else if (head.value == null) {
+			heads.remove(key, head); // Tombstone nobody can see past
+		}
+	}
+
+	private void unpin(long seq) {
+		boolean advanced;
+		synchronized (pins) {
+			pins.merge(seq, -1, (readers, one) -> readers + one == 0 ? null : readers + one);
+			long oldest = pins.isEmpty() ? Long.MAX_VALUE : pins.firstKey();
+			advanced = oldest > oldestPin;
+			oldestPin = oldest;
+		}
+		if (advanced) {
+			reclaim();
+		}
+	}
+
+	/**
+	 * Trim keys that kept old versions for snapshots that have since closed
+	 * (or for commits that were not yet visible)
+	 */
+	private void reclaim() {
+		for (K key : retained) {
+			retained.remove(key);
+			Version<V> head = heads.get(key);
+			if (head != null) {
+				trim(key, head);
+			}
+		}
+	}
+
+	/**
+	 * A pinned, read-only view of the map at one commit sequence
+	 */
+	public class Snapshot implements AutoCloseable {
+		private final long seq;
+		private boolean closed;
+
+		private Snapshot(long seq) {
+			this.seq = seq;
+		}
+
+		/**
+		 * @return The value as of this snapshot, or null
+		 */
+		public V get(K key) {
+			return read(heads.get(key));
+		}
+
+		/**
+		 * @return Every value as of this snapshot, without copying the map
+		 */
+		public Iterable<V> values() {
+			return () -> new Iterator<V>() {
+				private final Iterator<Version<V>> chains = heads.values().iterator();
+				private V next = advance();
+
+				private V advance() {
+					while (chains.hasNext()) {
+						V value = read(chains.next());
+						if (value != null) {
+							return value;
+						}
+					}
+					return null;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public V next() {
+					if (next == null) {
+						throw new NoSuchElementException();
+					}
+					V value = next;
+					next = advance();
+					return value;
+				}
+			};
+		}
+
+		/**
+		 * Copy this snapshot into a ConcurrentHashMap, e.g. to serialize it
+		 */
+		public ConcurrentHashMap<K, V> toMap() {
+			ConcurrentHashMap<K, V> copy = new ConcurrentHashMap<>(Math.max(16, size() * 4 / 3));
+			for (Map.Entry<K, Version<V>> entry : heads.entrySet()) {
+				V value = read(entry.getValue());
+				if (value != null) {
+					copy.put(entry.getKey(), value);
+				}
+			}
+			return copy;
+		}
+
+		/**
+		 * @return The commit sequence this snapshot reads at
+		 */
+		public long getSequence() {
+			return seq;
+		}
+
+		private V read(Version<V> version) {
+			while (version != null && version.seq > seq) {
+				version = version.older;
+			}
+			return version != null ? version.value : null;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				unpin(seq);
+			}
+		}
+	}
+}